@@ -0,0 +1,14 @@
+all: A F
+	echo all
+A: C
+	echo A
+C: D
+	echo C
+D: E
+	echo D
+E: C
+	echo E
+F: G
+	echo F
+G: F
+	echo G
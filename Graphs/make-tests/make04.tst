@@ -0,0 +1,4 @@
+echo Set 1
+java -ea make.Main -f make-tests/make04.mk -D make-tests/file04 all 2>&1
+echo Set 2
+java -ea make.Main -f make-tests/make04.mk -D make-tests/file04 A 2>&1
@@ -0,0 +1,114 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** A snapshot of the structure of a graph in compressed sparse row form,
+ *  for algorithms that scan adjacency lists many times.  The vertices are
+ *  numbered 0 .. vertexSize() - 1, and the successors of vertex #v are the
+ *  vertices #target(k) for offset(v) <= k < offset(v + 1), where edge #k
+ *  is edge(k).  As in Traversal, the successors of v are the vertices at
+ *  the other ends of G.edges(v), so that for an undirected graph each
+ *  edge appears in the adjacency lists of both of its ends.  Changing the
+ *  graph does not change the snapshot.  A snapshot may also be made
+ *  directly from the arrays of offsets and targets, with no graph; it
+ *  then has no vertices or edges, only their numbers.
+ *  @author Austin Gandy
+ */
+class AdjacencyArrays<VLabel, ELabel> {
+
+    /** A snapshot of G. */
+    AdjacencyArrays(Graph<VLabel, ELabel> G) {
+        int n = G.vertexSize();
+        _vertices = new ArrayList<Graph<VLabel, ELabel>.Vertex>(n);
+        _index = new HashMap<Graph<VLabel, ELabel>.Vertex, Integer>(2 * n);
+        for (Graph<VLabel, ELabel>.Vertex v : G.vertices()) {
+            _index.put(v, _vertices.size());
+            _vertices.add(v);
+        }
+        _offsets = new int[n + 1];
+        _edges = new ArrayList<Graph<VLabel, ELabel>.Edge>();
+        for (int v = 0; v < n; v += 1) {
+            _offsets[v] = _edges.size();
+            for (Graph<VLabel, ELabel>.Edge e : G.edges(_vertices.get(v))) {
+                _edges.add(e);
+            }
+        }
+        _offsets[n] = _edges.size();
+        _targets = new int[_edges.size()];
+        for (int v = 0; v < n; v += 1) {
+            Graph<VLabel, ELabel>.Vertex from = _vertices.get(v);
+            for (int k = _offsets[v]; k < _offsets[v + 1]; k += 1) {
+                _targets[k] = _index.get(_edges.get(k).getV(from));
+            }
+        }
+    }
+
+    /** A snapshot of the graph with the adjacency lists given by OFFSETS
+     *  and TARGETS, as for offset and target, which are not copied. */
+    AdjacencyArrays(int[] offsets, int[] targets) {
+        if (offsets.length == 0 || offsets[0] != 0
+            || offsets[offsets.length - 1] != targets.length) {
+            throw new IllegalArgumentException("malformed adjacency arrays");
+        }
+        _vertices = null;
+        _index = null;
+        _offsets = offsets;
+        _targets = targets;
+        _edges = null;
+    }
+
+    /** Returns the number of vertices. */
+    int vertexSize() {
+        return _offsets.length - 1;
+    }
+
+    /** Returns the number of entries in all adjacency lists. */
+    int adjacencySize() {
+        return _targets.length;
+    }
+
+    /** Returns vertex #I. */
+    Graph<VLabel, ELabel>.Vertex vertex(int i) {
+        return _vertices.get(i);
+    }
+
+    /** Returns the number of vertex V, or -1 if V was not in the graph. */
+    int indexOf(Graph<VLabel, ELabel>.Vertex v) {
+        if (_index == null) {
+            return -1;
+        }
+        Integer i = _index.get(v);
+        return i == null ? -1 : i;
+    }
+
+    /** Returns the start of the adjacency list of vertex #V, which ends
+     *  at offset(V + 1). */
+    int offset(int v) {
+        return _offsets[v];
+    }
+
+    /** Returns the number of the vertex at adjacency list entry #K. */
+    int target(int k) {
+        return _targets[k];
+    }
+
+    /** Returns the edge at adjacency list entry #K. */
+    Graph<VLabel, ELabel>.Edge edge(int k) {
+        return _edges.get(k);
+    }
+
+    /** The vertices, in order of their numbers, or null if there is no
+     *  graph; likewise for _index and _edges. */
+    private final ArrayList<Graph<VLabel, ELabel>.Vertex> _vertices;
+    /** Maps vertices to their numbers. */
+    private final HashMap<Graph<VLabel, ELabel>.Vertex, Integer> _index;
+    /** Start of each vertex's adjacency list in _targets and _edges, with
+     *  a final entry equal to their length. */
+    private final int[] _offsets;
+    /** Successor numbers, by adjacency list entry. */
+    private final int[] _targets;
+    /** Edges, by adjacency list entry. */
+    private final ArrayList<Graph<VLabel, ELabel>.Edge> _edges;
+
+}
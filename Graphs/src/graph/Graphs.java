@@ -1,6 +1,7 @@
 package graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -228,6 +229,34 @@ public final class Graphs {
     List<Graph<VLabel, ELabel>.Edge> shortestPath(Graph<VLabel, ELabel> G,
                  Graph<VLabel, ELabel>.Vertex V0,
                  Graph<VLabel, ELabel>.Vertex V1, Distancer<? super VLabel> h) {
+        return shortestPath(G, V0, V1, h, TraversalStats.NONE);
+    }
+
+    /** Returns the same result as the 4-argument version of shortestPath
+     *  with arguments G, V0, V1, and H, and with the same side effects,
+     *  recording the search's counters and timings in STATS.  Expanding a
+     *  vertex counts as a visit, and a path discarded because a better one
+     *  to the same vertex is already known counts as a reject. */
+    public static <VLabel extends Weightable, ELabel extends Weighted>
+    List<Graph<VLabel, ELabel>.Edge> shortestPath(Graph<VLabel, ELabel> G,
+                 Graph<VLabel, ELabel>.Vertex V0,
+                 Graph<VLabel, ELabel>.Vertex V1, Distancer<? super VLabel> h,
+                 TraversalStats stats) {
+        stats.start();
+        try {
+            return shortestPathHelper(G, V0, V1, h, stats);
+        } finally {
+            stats.finish();
+        }
+    }
+
+    /** Performs the search for shortestPath(G, V0, V1, H, STATS). */
+    private static <VLabel extends Weightable, ELabel extends Weighted>
+    List<Graph<VLabel, ELabel>.Edge> shortestPathHelper(
+                 Graph<VLabel, ELabel> G,
+                 Graph<VLabel, ELabel>.Vertex V0,
+                 Graph<VLabel, ELabel>.Vertex V1, Distancer<? super VLabel> h,
+                 TraversalStats stats) {
         HashSet<Node<VLabel, ELabel>> closed =
                 new HashSet<Node<VLabel, ELabel>>();
         Comparator<Node<VLabel, ELabel>> compare =
@@ -249,11 +278,16 @@ public final class Graphs {
         Node<VLabel, ELabel> currentNode = new Node<VLabel, ELabel>(V0,
                 new ArrayList<Graph<VLabel, ELabel>.Edge>(), 0.0,
                 h.dist(V0.getLabel(), V1.getLabel()));
+        stats.heuristicEvaluated();
         ArrayList<Graph<VLabel, ELabel>.Edge> path =
                 new ArrayList<Graph<VLabel, ELabel>.Edge>();
         open.add(currentNode);
+        stats.heapOperation();
+        stats.fringeSize(open.size());
         while (!open.isEmpty()) {
             currentNode = open.poll();
+            stats.heapOperation();
+            stats.vertexVisited();
             closed.add(currentNode);
             if (currentNode.getVertex().equals(V1)) {
                 break;
@@ -262,6 +296,7 @@ public final class Graphs {
             Graph<VLabel, ELabel>.Vertex vert;
             for (Graph<VLabel, ELabel>.Edge e
                     : G.edges(currentNode.getVertex())) {
+                stats.edgeScanned();
                 vert = e.getV(currentNode.getVertex());
                 path = new ArrayList<Graph<VLabel, ELabel>.Edge>(
                         currentNode.getPath());
@@ -271,15 +306,20 @@ public final class Graphs {
                         + e.getLabel().weight(),
                         h.dist(e.getV(vert).getLabel(),
                                 V1.getLabel()));
+                stats.heuristicEvaluated();
                 if (openHasBetter(open, nextNode)) {
+                    stats.rejected();
                     continue;
                 } else if (closedHasBetter(closed, nextNode)) {
+                    stats.rejected();
                     continue;
                 } else {
                     nextNode.getVertex().getLabel().setWeight(
                             nextNode.getDistanceCost());
                     if (!open.contains(nextNode)) {
                         open.add(nextNode);
+                        stats.heapOperation();
+                        stats.fringeSize(open.size());
                     }
                 }
             }
@@ -287,6 +327,166 @@ public final class Graphs {
         return currentNode.getPath();
     }
 
+    /** Returns the numbers of edges on shortest paths in G from each of the
+     *  vertices in SOURCES to every vertex of G, where the successors of a
+     *  vertex v are the other ends of G.edges(v), as for Traversal.  The
+     *  result is the same as that of one breadth-first traversal per
+     *  source, but the traversals run SOURCE_BATCH at a time in lock step,
+     *  so that each scan of an adjacency list serves every traversal that
+     *  reaches its vertex at the same level.  Each vertex carries two bit
+     *  masks of the traversals in the batch: those that have reached it,
+     *  and those whose current frontier contains it. */
+    public static <VLabel, ELabel> HopDistances<VLabel, ELabel>
+    hopDistances(Graph<VLabel, ELabel> G,
+                 List<Graph<VLabel, ELabel>.Vertex> sources) {
+        AdjacencyArrays<VLabel, ELabel> adj =
+            new AdjacencyArrays<VLabel, ELabel>(G);
+        int n = adj.vertexSize();
+        int[][] levels = new int[sources.size()][];
+        long[] seen = new long[n];
+        long[] visit = new long[n];
+        long[] visitNext = new long[n];
+        int[] frontier = new int[n];
+        int[] nextFrontier = new int[n];
+        for (int first = 0; first < sources.size(); first += SOURCE_BATCH) {
+            int batch = Math.min(SOURCE_BATCH, sources.size() - first);
+            Arrays.fill(seen, 0L);
+            int frontierSize = 0;
+            for (int i = 0; i < batch; i += 1) {
+                int s = adj.indexOf(sources.get(first + i));
+                if (s < 0) {
+                    throw new IllegalArgumentException("source not in graph");
+                }
+                levels[first + i] = new int[n];
+                Arrays.fill(levels[first + i], HopDistances.UNREACHABLE);
+                levels[first + i][s] = 0;
+                if (visit[s] == 0) {
+                    frontier[frontierSize] = s;
+                    frontierSize += 1;
+                }
+                visit[s] |= 1L << i;
+                seen[s] |= 1L << i;
+            }
+            for (int level = 1; frontierSize > 0; level += 1) {
+                int nextSize = 0;
+                for (int f = 0; f < frontierSize; f += 1) {
+                    int v = frontier[f];
+                    long bits = visit[v];
+                    for (int k = adj.offset(v); k < adj.offset(v + 1);
+                         k += 1) {
+                        int w = adj.target(k);
+                        long fresh = bits & ~seen[w];
+                        if (fresh != 0) {
+                            if (visitNext[w] == 0) {
+                                nextFrontier[nextSize] = w;
+                                nextSize += 1;
+                            }
+                            visitNext[w] |= fresh;
+                            seen[w] |= fresh;
+                        }
+                    }
+                    visit[v] = 0;
+                }
+                for (int f = 0; f < nextSize; f += 1) {
+                    int w = nextFrontier[f];
+                    long bits = visitNext[w];
+                    visit[w] = bits;
+                    visitNext[w] = 0;
+                    while (bits != 0) {
+                        int i = Long.numberOfTrailingZeros(bits);
+                        levels[first + i][w] = level;
+                        bits &= bits - 1;
+                    }
+                }
+                int[] tmp = frontier;
+                frontier = nextFrontier;
+                nextFrontier = tmp;
+                frontierSize = nextSize;
+            }
+        }
+        return new HopDistances<VLabel, ELabel>(adj, levels);
+    }
+
+    /** Number of sources traversed together by hopDistances: one per bit
+     *  of a long. */
+    private static final int SOURCE_BATCH = Long.SIZE;
+
+    /** Returns the strongly connected components of G: the largest sets of
+     *  vertices in which each vertex can reach every other along edges of
+     *  G.  Each vertex of G is in exactly one component.  The components
+     *  are in reverse topological order: no edge leads from a component to
+     *  one later in the list.
+     *
+     *  This is Tarjan's algorithm, with the recursion replaced by an
+     *  explicit stack of vertices and a per-vertex cursor into its
+     *  adjacency list, so that the depth of the search is limited only by
+     *  the size of G. */
+    public static <VLabel, ELabel> List<List<Graph<VLabel, ELabel>.Vertex>>
+    stronglyConnectedComponents(DirectedGraph<VLabel, ELabel> G) {
+        AdjacencyArrays<VLabel, ELabel> adj =
+            new AdjacencyArrays<VLabel, ELabel>(G);
+        int n = adj.vertexSize();
+        List<List<Graph<VLabel, ELabel>.Vertex>> result =
+            new ArrayList<List<Graph<VLabel, ELabel>.Vertex>>();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] cursor = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] path = new int[n];
+        Arrays.fill(index, -1);
+        int count = 0, stackSize = 0;
+        for (int root = 0; root < n; root += 1) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int pathSize = 0;
+            int v = root;
+            while (true) {
+                if (index[v] < 0) {
+                    index[v] = low[v] = count;
+                    count += 1;
+                    cursor[v] = adj.offset(v);
+                    stack[stackSize] = v;
+                    stackSize += 1;
+                    onStack[v] = true;
+                    path[pathSize] = v;
+                    pathSize += 1;
+                }
+                if (cursor[v] < adj.offset(v + 1)) {
+                    int w = adj.target(cursor[v]);
+                    cursor[v] += 1;
+                    if (index[w] < 0) {
+                        v = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    ArrayList<Graph<VLabel, ELabel>.Vertex> component =
+                        new ArrayList<Graph<VLabel, ELabel>.Vertex>();
+                    int w;
+                    do {
+                        stackSize -= 1;
+                        w = stack[stackSize];
+                        onStack[w] = false;
+                        component.add(adj.vertex(w));
+                    } while (w != v);
+                    result.add(component);
+                }
+                pathSize -= 1;
+                if (pathSize == 0) {
+                    break;
+                }
+                int parent = path[pathSize - 1];
+                low[parent] = Math.min(low[parent], low[v]);
+                v = parent;
+            }
+        }
+        return result;
+    }
+
     /** Returns a distancer whose dist method always returns 0. */
     public static final Distancer<Object> ZERO_DISTANCER =
         new Distancer<Object>() {
@@ -1,7 +1,11 @@
 package graph;
 
 import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 
     /** Test class for the Graphs class.
@@ -180,6 +184,496 @@ public class GraphsTest {
         }
     }
 
+    @Test
+    /** Tests that the A* search reports its counters to a TraversalStats. */
+    public void testShortestPathStats() {
+        setupIntricateGraph();
+        final int[] runs = { 0 };
+        TraversalStats stats = new TraversalStats() {
+            @Override
+            protected void runFinished() {
+                runs[0] += 1;
+            }
+        };
+        Graphs.shortestPath(_graph, vert.get(0), vert.get(1),
+                            Graphs.ZERO_DISTANCER, stats);
+        assertEquals(1, runs[0]);
+        assertTrue(stats.verticesVisited() > 0);
+        assertTrue(stats.edgesScanned() >= stats.verticesVisited());
+        assertEquals(stats.edgesScanned() + 1, stats.heuristicEvaluations());
+        assertTrue(stats.heapOperations() >= 2 * stats.verticesVisited());
+        assertTrue(stats.wallTimeNanos() > 0);
+    }
+
+    @Test
+    /** Tests hop distances on a directed tree-like graph. */
+    public void testHopDistancesDirected() {
+        DirectedGraph<Integer, Integer> g =
+            new DirectedGraph<Integer, Integer>();
+        ArrayList<Graph<Integer, Integer>.Vertex> v =
+            new ArrayList<Graph<Integer, Integer>.Vertex>();
+        for (int i = 0; i <= 10; i += 1) {
+            v.add(g.add(i));
+        }
+        int[][] edges = { { 0, 1 }, { 1, 4 }, { 4, 8 }, { 0, 2 }, { 0, 3 },
+                          { 2, 5 }, { 5, 9 }, { 3, 10 }, { 2, 6 }, { 3, 7 },
+                          { 7, 10 }, { 6, 10 } };
+        for (int[] e : edges) {
+            g.add(v.get(e[0]), v.get(e[1]));
+        }
+        int[] fromZero = { 0, 1, 1, 1, 2, 2, 2, 2, 3, 3, 2 };
+        HopDistances<Integer, Integer> hops =
+            Graphs.hopDistances(g, asList(v.get(0), v.get(2)));
+        assertEquals(2, hops.sourceCount());
+        for (int i = 0; i <= 10; i += 1) {
+            assertEquals(fromZero[i], hops.distance(0, v.get(i)));
+        }
+        assertEquals(HopDistances.UNREACHABLE, hops.distance(1, v.get(0)));
+        assertEquals(2, hops.distance(1, v.get(10)));
+    }
+
+    @Test
+    /** Tests hop distances from more sources than fit in one batch. */
+    public void testHopDistancesManySources() {
+        int n = 100;
+        UndirectedGraph<Integer, Integer> ring =
+            new UndirectedGraph<Integer, Integer>();
+        ArrayList<Graph<Integer, Integer>.Vertex> v =
+            new ArrayList<Graph<Integer, Integer>.Vertex>();
+        for (int i = 0; i < n; i += 1) {
+            v.add(ring.add(i));
+        }
+        for (int i = 0; i < n; i += 1) {
+            ring.add(v.get(i), v.get((i + 1) % n));
+        }
+        HopDistances<Integer, Integer> hops = Graphs.hopDistances(ring, v);
+        for (int s = 0; s < n; s += 1) {
+            for (int i = 0; i < n; i += 1) {
+                int d = Math.abs(s - i);
+                assertEquals(Math.min(d, n - d), hops.distance(s, v.get(i)));
+            }
+        }
+    }
+
+    @Test
+    /** Tests strongly connected components and their order. */
+    public void testStronglyConnectedComponents() {
+        DirectedGraph<Integer, Integer> g =
+            new DirectedGraph<Integer, Integer>();
+        ArrayList<Graph<Integer, Integer>.Vertex> v =
+            new ArrayList<Graph<Integer, Integer>.Vertex>();
+        for (int i = 0; i < 8; i += 1) {
+            v.add(g.add(i));
+        }
+        int[][] edges = { { 0, 1 }, { 1, 2 }, { 2, 0 }, { 2, 3 }, { 3, 4 },
+                          { 4, 3 }, { 5, 4 }, { 6, 6 }, { 6, 7 } };
+        for (int[] e : edges) {
+            g.add(v.get(e[0]), v.get(e[1]));
+        }
+        List<List<Graph<Integer, Integer>.Vertex>> components =
+            Graphs.stronglyConnectedComponents(g);
+        assertEquals(5, components.size());
+        int[] component = new int[8];
+        for (int c = 0; c < components.size(); c += 1) {
+            for (Graph<Integer, Integer>.Vertex x : components.get(c)) {
+                component[x.getLabel()] = c;
+            }
+        }
+        assertEquals(component[0], component[1]);
+        assertEquals(component[0], component[2]);
+        assertEquals(component[3], component[4]);
+        assertTrue(component[3] < component[0]);
+        assertTrue(component[3] < component[5]);
+        assertTrue(component[7] < component[6]);
+        assertEquals(1, components.get(component[6]).size());
+    }
+
+    @Test
+    /** Tests strongly connected components of a long cycle, which would
+     *  overflow the stack of a recursive search. */
+    public void testStronglyConnectedComponentsDeep() {
+        int n = 100000;
+        DirectedGraph<Integer, Integer> g =
+            new DirectedGraph<Integer, Integer>();
+        ArrayList<Graph<Integer, Integer>.Vertex> v =
+            new ArrayList<Graph<Integer, Integer>.Vertex>();
+        for (int i = 0; i < n; i += 1) {
+            v.add(g.add(i));
+        }
+        for (int i = 0; i + 1 < n; i += 1) {
+            g.add(v.get(i), v.get(i + 1));
+        }
+        assertEquals(n, Graphs.stronglyConnectedComponents(g).size());
+        g.add(v.get(n - 1), v.get(0));
+        assertEquals(1, Graphs.stronglyConnectedComponents(g).size());
+    }
+
+    @Test
+    /** Tests that a TopologicalOrder stays valid under random edge
+     *  insertions and rejects exactly the edges that close cycles. */
+    public void testTopologicalOrder() {
+        int n = 60;
+        DirectedGraph<Integer, Integer> g =
+            new DirectedGraph<Integer, Integer>();
+        TopologicalOrder<Integer, Integer> order =
+            new TopologicalOrder<Integer, Integer>(g);
+        ArrayList<Graph<Integer, Integer>.Vertex> v =
+            new ArrayList<Graph<Integer, Integer>.Vertex>();
+        for (int i = 0; i < n; i += 1) {
+            v.add(order.add(i));
+        }
+        boolean[][] reaches = new boolean[n][n];
+        Random random = new Random(61);
+        for (int trial = 0; trial < 400; trial += 1) {
+            int x = random.nextInt(n), y = random.nextInt(n);
+            boolean cycle = x == y || reaches[y][x];
+            try {
+                order.add(v.get(x), v.get(y));
+                assertFalse(cycle);
+            } catch (IllegalArgumentException e) {
+                assertTrue(cycle);
+                continue;
+            }
+            for (int a = 0; a < n; a += 1) {
+                if (a == x || reaches[a][x]) {
+                    reaches[a][y] = true;
+                    for (int b = 0; b < n; b += 1) {
+                        reaches[a][b] |= reaches[y][b];
+                    }
+                }
+            }
+            for (Graph<Integer, Integer>.Edge e : g.edges()) {
+                assertTrue(order.precedes(e.getV0(), e.getV1()));
+            }
+        }
+        List<Graph<Integer, Integer>.Vertex> sorted = order.order();
+        for (int p = 0; p < n; p += 1) {
+            assertEquals(p, order.position(sorted.get(p)));
+        }
+    }
+
+    @Test
+    /** Tests that an insertion moves only the affected region. */
+    public void testTopologicalOrderLocal() {
+        int n = 100000;
+        DirectedGraph<Integer, Integer> g =
+            new DirectedGraph<Integer, Integer>();
+        for (int i = 0; i < n; i += 1) {
+            g.add(i);
+        }
+        TopologicalOrder<Integer, Integer> order =
+            new TopologicalOrder<Integer, Integer>(g);
+        List<Graph<Integer, Integer>.Vertex> sorted = order.order();
+        order.add(sorted.get(n - 1), sorted.get(0));
+        assertEquals(2, order.moved());
+        assertTrue(order.precedes(sorted.get(n - 1), sorted.get(0)));
+        try {
+            order.add(sorted.get(0), sorted.get(n - 1));
+            fail("cycle not rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, g.edgeSize());
+        }
+    }
+
+    @Test
+    /** Tests that a PathFinder finds the path of the intricate graph. */
+    public void testPathFinder() {
+        setupIntricateGraph();
+        Graph<WeighsStuff, WeighsStuff>.Vertex alone = setVertex(12);
+        PathFinder<WeighsStuff, WeighsStuff> finder =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER);
+        assertEquals(_edges, finder.shortestPath(vert.get(0), vert.get(1)));
+        assertEquals(8.0, finder.distance(vert.get(0), vert.get(1)), 0.0);
+        assertEquals(0, finder.shortestPath(vert.get(1), vert.get(1)).size());
+        assertNull(finder.shortestPath(vert.get(0), alone));
+        assertEquals(Double.POSITIVE_INFINITY,
+                     finder.distance(alone, vert.get(1)), 0.0);
+        assertEquals(_edges, finder.shortestPath(vert.get(0), vert.get(1)));
+    }
+
+    @Test
+    /** Tests the cache of paths of a PathFinder. */
+    public void testPathFinderCache() {
+        setupIntricateGraph();
+        Graph<WeighsStuff, WeighsStuff>.Vertex alone = setVertex(12);
+        PathFinder<WeighsStuff, WeighsStuff> finder =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER,
+                                                     2, 100);
+        assertEquals(_edges, finder.shortestPath(vert.get(0), vert.get(1)));
+        assertEquals(_edges, finder.shortestPath(vert.get(0), vert.get(1)));
+        assertEquals(8.0, finder.distance(vert.get(0), vert.get(1)), 0.0);
+        assertEquals(1, finder.misses());
+        assertEquals(2, finder.hits());
+        assertNull(finder.shortestPath(vert.get(0), alone));
+        assertNull(finder.shortestPath(vert.get(0), alone));
+        assertEquals(2, finder.cachedPaths());
+        assertEquals(3, finder.hits());
+        finder.shortestPath(vert.get(1), vert.get(0));
+        assertEquals(2, finder.cachedPaths());
+        assertEquals(_edges, finder.shortestPath(vert.get(0), vert.get(1)));
+        assertEquals(4, finder.misses());
+        PathFinder<WeighsStuff, WeighsStuff> small =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER,
+                                                     10, _edges.size());
+        small.shortestPath(vert.get(0), vert.get(1));
+        assertEquals(0, small.cachedPaths());
+        PathFinder<WeighsStuff, WeighsStuff> none =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER);
+        none.shortestPath(vert.get(0), vert.get(1));
+        assertEquals(0, none.cachedPaths());
+    }
+
+    @Test
+    /** Tests PathFinder searches from several threads against
+     *  Graphs.shortestPath on a random graph. */
+    public void testPathFinderThreads() throws InterruptedException {
+        _graph = new UndirectedGraph<WeighsStuff, WeighsStuff>();
+        final int n = 300;
+        Random random = new Random(11);
+        final ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex> v =
+            new ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex>();
+        for (int i = 0; i < n; i += 1) {
+            v.add(setVertex(i));
+        }
+        for (int i = 0; i < 3 * n; i += 1) {
+            addEdge(v.get(random.nextInt(n)), v.get(random.nextInt(n)),
+                    1 + random.nextInt(1000), null);
+        }
+        final int pairs = 40;
+        final int[] from = new int[pairs], to = new int[pairs];
+        final double[] expected = new double[pairs];
+        for (int p = 0; p < pairs; p += 1) {
+            from[p] = random.nextInt(n);
+            to[p] = random.nextInt(n);
+            List<Graph<WeighsStuff, WeighsStuff>.Edge> path =
+                Graphs.shortestPath(_graph, v.get(from[p]), v.get(to[p]),
+                                    Graphs.ZERO_DISTANCER);
+            for (Graph<WeighsStuff, WeighsStuff>.Edge e : path) {
+                expected[p] += e.getLabel().weight();
+            }
+        }
+        final PathFinder<WeighsStuff, WeighsStuff> finder =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER);
+        final int[] failures = { 0 };
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int round = 0; round < 20; round += 1) {
+                        for (int p = 0; p < pairs; p += 1) {
+                            double d =
+                                finder.distance(v.get(from[p]), v.get(to[p]));
+                            if (d != expected[p]) {
+                                synchronized (failures) {
+                                    failures[0] += 1;
+                                }
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures[0]);
+    }
+
+    @Test
+    /** Tests PathFinder searches on a random undirected graph whose edges
+     *  are mostly chains of vertices with two neighbors, with ends inside
+     *  chains as well as at junctions, against searches on the same graph
+     *  made directed, which step over nothing.  Also tests the distances
+     *  from one vertex to several at once. */
+    public void testPathFinderChains() {
+        Random random = new Random(5);
+        int junctions = 30;
+        ArrayList<int[]> edges = new ArrayList<int[]>();
+        int n = junctions;
+        for (int i = 0; i < 2 * junctions; i += 1) {
+            int last = random.nextInt(junctions);
+            for (int j = random.nextInt(5); j > 0; j -= 1) {
+                edges.add(new int[] { last, n, 1 + random.nextInt(20) });
+                last = n;
+                n += 1;
+            }
+            edges.add(new int[] { last, random.nextInt(junctions),
+                                  1 + random.nextInt(20) });
+        }
+        int ring = n;
+        for (int j = 0; j < 5; j += 1) {
+            edges.add(new int[] { ring + j, ring + (j + 1) % 5, 1 });
+        }
+        n += 5;
+        Graph<WeighsStuff, WeighsStuff> directed =
+            new DirectedGraph<WeighsStuff, WeighsStuff>();
+        _graph = new UndirectedGraph<WeighsStuff, WeighsStuff>();
+        ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex> v =
+            new ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex>(),
+            dv = new ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex>();
+        for (int i = 0; i < n; i += 1) {
+            v.add(setVertex(i));
+            dv.add(directed.add(new WeighsStuff()));
+        }
+        for (int[] e : edges) {
+            addEdge(v.get(e[0]), v.get(e[1]), e[2], null);
+            WeighsStuff label = new WeighsStuff();
+            label.setWeight(e[2]);
+            directed.add(dv.get(e[0]), dv.get(e[1]), label);
+            directed.add(dv.get(e[1]), dv.get(e[0]), label);
+        }
+        PathFinder<WeighsStuff, WeighsStuff> finder =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER),
+            plain =
+            new PathFinder<WeighsStuff, WeighsStuff>(directed,
+                                                     Graphs.ZERO_DISTANCER);
+        assertTrue(finder.innerVertices() > junctions);
+        assertEquals(0, plain.innerVertices());
+        for (int p = 0; p < 1000; p += 1) {
+            int from = random.nextInt(n), to = random.nextInt(n);
+            List<Graph<WeighsStuff, WeighsStuff>.Edge> path =
+                finder.shortestPath(v.get(from), v.get(to));
+            double expected = plain.distance(dv.get(from), dv.get(to));
+            if (path == null) {
+                assertEquals(Double.POSITIVE_INFINITY, expected, 0.0);
+                continue;
+            }
+            double total = 0;
+            Graph<WeighsStuff, WeighsStuff>.Vertex at = v.get(from);
+            for (Graph<WeighsStuff, WeighsStuff>.Edge e : path) {
+                assertTrue(e.getV0() == at || e.getV1() == at);
+                at = e.getV(at);
+                total += e.getLabel().weight();
+            }
+            assertSame(v.get(to), at);
+            assertEquals(expected, total, 0.0);
+            assertEquals(expected, finder.distance(v.get(from), v.get(to)),
+                         0.0);
+        }
+        assertEquals(2, finder.shortestPath(v.get(ring),
+                                            v.get(ring + 3)).size());
+        for (int p = 0; p < 20; p += 1) {
+            int from = random.nextInt(n);
+            int[] ends = new int[11];
+            ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex> targets =
+                new ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex>();
+            for (int t = 0; t < ends.length; t += 1) {
+                ends[t] = t == 0 ? from : random.nextInt(n);
+                targets.add(v.get(ends[t]));
+            }
+            double[] dists = finder.distances(v.get(from), targets);
+            assertEquals(ends.length, dists.length);
+            for (int t = 0; t < ends.length; t += 1) {
+                assertEquals(plain.distance(dv.get(from), dv.get(ends[t])),
+                             dists[t], 0.0);
+            }
+        }
+    }
+
+    @Test
+    /** Tests a PathFinder made from adjacency arrays, with chains and
+     *  self-loops, against one made from the same graph as a Graph. */
+    public void testPathFinderArrays() {
+        Random random = new Random(17);
+        int n = 200;
+        int[][] edges = new int[3 * n / 2][];
+        for (int i = 0; i < edges.length; i += 1) {
+            int v1 = i < n - 1 ? i + 1 : random.nextInt(n);
+            int v0 = i < n - 1 ? random.nextInt(i + 1)
+                : i == n - 1 ? v1 : random.nextInt(n);
+            edges[i] = new int[] { v0, v1, 1 + random.nextInt(20) };
+        }
+        _graph = new UndirectedGraph<WeighsStuff, WeighsStuff>();
+        ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex> v =
+            new ArrayList<Graph<WeighsStuff, WeighsStuff>.Vertex>();
+        ArrayList<WeighsStuff> labels = new ArrayList<WeighsStuff>();
+        for (int i = 0; i < n; i += 1) {
+            v.add(setVertex(i));
+            labels.add(v.get(i).getLabel());
+        }
+        int[] offsets = new int[n + 1];
+        for (int[] e : edges) {
+            addEdge(v.get(e[0]), v.get(e[1]), e[2], null);
+            offsets[e[0] + 1] += 1;
+            offsets[e[1] + 1] += 1;
+        }
+        for (int i = 0; i < n; i += 1) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int[] e : edges) {
+            targets[fill[e[0]]] = e[1];
+            weights[fill[e[0]]] = e[2];
+            fill[e[0]] += 1;
+            targets[fill[e[1]]] = e[0];
+            weights[fill[e[1]]] = e[2];
+            fill[e[1]] += 1;
+        }
+        PathFinder<WeighsStuff, WeighsStuff> graphFinder =
+            new PathFinder<WeighsStuff, WeighsStuff>(_graph,
+                                                     Graphs.ZERO_DISTANCER),
+            finder =
+            new PathFinder<WeighsStuff, WeighsStuff>(offsets, targets,
+                                                     weights, labels, false,
+                                                     Graphs.ZERO_DISTANCER,
+                                                     10, 1000);
+        assertEquals(graphFinder.innerVertices(), finder.innerVertices());
+        int[] ends = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            ends[i] = i;
+        }
+        for (int p = 0; p < 300; p += 1) {
+            int from = random.nextInt(n), to = random.nextInt(n);
+            double expected = graphFinder.distance(v.get(from), v.get(to));
+            int[] path = finder.shortestPath(from, to);
+            double total = 0;
+            int at = from;
+            for (int k : path) {
+                assertTrue(k >= offsets[at] && k < offsets[at + 1]);
+                at = targets[k];
+                total += weights[k];
+            }
+            assertEquals(to, at);
+            assertEquals(expected, total, 0.0);
+            if (path.length > 0) {
+                path[0] = -1;
+                assertEquals(to, replay(finder.shortestPath(from, to), from,
+                                        targets));
+            }
+        }
+        int from = random.nextInt(n);
+        double[] dists = finder.distances(from, ends);
+        for (int i = 0; i < n; i += 1) {
+            assertEquals(graphFinder.distance(v.get(from), v.get(i)),
+                         dists[i], 0.0);
+        }
+        try {
+            finder.shortestPath(0, n);
+            fail("bad vertex number accepted");
+        } catch (IllegalArgumentException e) {
+            /* Expected. */
+        }
+    }
+
+    /** Returns the vertex reached from vertex #FROM along the adjacency
+     *  entries PATH, given TARGETS. */
+    private int replay(int[] path, int from, int[] targets) {
+        for (int k : path) {
+            from = targets[k];
+        }
+        return from;
+    }
+
     /** The graph being traversed. */
     private Graph<WeighsStuff, WeighsStuff> _graph;
 
@@ -0,0 +1,61 @@
+package graph;
+
+/** The numbers of edges on shortest paths from each of a list of source
+ *  vertices to every vertex of a graph, as computed by
+ *  Graphs.hopDistances.  Vertices are numbered 0 .. vertexSize() - 1
+ *  (see indexOf and vertex), and sources by their positions in the list
+ *  given to Graphs.hopDistances.
+ *  @author Austin Gandy
+ */
+public final class HopDistances<VLabel, ELabel> {
+
+    /** The level of a vertex that is unreachable from a source. */
+    public static final int UNREACHABLE = -1;
+
+    /** Distances over the vertices of GRAPH, where LEVELS[s][v] is the
+     *  distance from source #s to vertex #v. */
+    HopDistances(AdjacencyArrays<VLabel, ELabel> graph, int[][] levels) {
+        _graph = graph;
+        _levels = levels;
+    }
+
+    /** Returns the number of sources. */
+    public int sourceCount() {
+        return _levels.length;
+    }
+
+    /** Returns the number of vertices. */
+    public int vertexSize() {
+        return _graph.vertexSize();
+    }
+
+    /** Returns vertex #I. */
+    public Graph<VLabel, ELabel>.Vertex vertex(int i) {
+        return _graph.vertex(i);
+    }
+
+    /** Returns the number of vertex V, or -1 if V was not in the graph. */
+    public int indexOf(Graph<VLabel, ELabel>.Vertex v) {
+        return _graph.indexOf(v);
+    }
+
+    /** Returns the levels of all vertices relative to source #S: element
+     *  #v is the number of edges on a shortest path from that source to
+     *  vertex #v, or UNREACHABLE.  The array is shared with me, and should
+     *  not be modified. */
+    public int[] levels(int s) {
+        return _levels[s];
+    }
+
+    /** Returns the number of edges on a shortest path from source #S to
+     *  V, or UNREACHABLE if there is none. */
+    public int distance(int s, Graph<VLabel, ELabel>.Vertex v) {
+        return _levels[s][_graph.indexOf(v)];
+    }
+
+    /** The vertex numbering. */
+    private final AdjacencyArrays<VLabel, ELabel> _graph;
+    /** Levels by source and vertex number. */
+    private final int[][] _levels;
+
+}
@@ -0,0 +1,649 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/** Finds shortest paths in a fixed graph by A* search, for programs that
+ *  ask for many paths, possibly from several threads at once.
+ *
+ *  A PathFinder takes a snapshot of its graph in compressed sparse row
+ *  form (see AdjacencyArrays), with the weight of each edge, when it is
+ *  created; later changes to the graph or to the weights of its edges do
+ *  not affect it.  A program that already holds its graph in that form
+ *  may give the arrays to the PathFinder instead, and never build a
+ *  Graph at all.  Unlike Graphs.shortestPath, it does not set the
+ *  weights of vertices.  Each thread that searches gets its own
+ *  workspace of per-vertex arrays, allocated on its first search and
+ *  reused afterward.  Entries in a workspace are stamped with the number
+ *  of the search that set them, so that a search need not clear the
+ *  entries left by earlier ones, and costs time proportional to the part
+ *  of the graph it explores.
+ *
+ *  The fringe is a binary heap ordered by estimated total cost, and then
+ *  by the order in which entries were added, so that the result is
+ *  deterministic.  A vertex reached again by a strictly shorter path is
+ *  added to the fringe again, even if it was already expanded; stale
+ *  entries are skipped when removed.  The search is thus exact whenever
+ *  the distance measure never overestimates the weight of the shortest
+ *  path to the destination.
+ *
+ *  In an undirected graph, most vertices of a road map have just two
+ *  neighbors, and serve only to continue a chain of edges between
+ *  vertices that have more (junctions).  Searches step over such chains
+ *  as if each were a single edge, never placing their inner vertices in
+ *  the fringe, unless the chain contains the source or destination of
+ *  the search, where it must stop.  The weight of a chain is still
+ *  accumulated edge by edge, so that the weight of every path is
+ *  computed exactly as it would be without skipping, and the path
+ *  returned still has all of its edges.
+ *
+ *  A PathFinder may also keep a cache of the paths it has found, so that
+ *  programs that ask for the same paths again need not search again.
+ *  Each cached path is kept as the sequence of numbers of its adjacency
+ *  entries; the cache holds at most a given number of paths with at most
+ *  a given total number of edges, discarding the least recently used
+ *  paths as needed.  Since the snapshot never changes, neither do the
+ *  cached paths; the paths in a changed graph are found by a new
+ *  PathFinder with its own cache.
+ *  @author Austin Gandy
+ */
+public class PathFinder<VLabel, ELabel extends Weighted> {
+
+    /** A PathFinder for G, using H as the distance measure of the
+     *  search, which must satisfy the conditions given for
+     *  Graphs.shortestPath.  H must be safe to call from several threads
+     *  at once if the PathFinder is. */
+    public PathFinder(Graph<VLabel, ELabel> G, Distancer<? super VLabel> h) {
+        this(G, h, 0, 0);
+    }
+
+    /** A PathFinder for G, using H as the distance measure of the search,
+     *  as for PathFinder(G, H), that caches up to MAXPATHS paths having at
+     *  most MAXEDGES edges in all, counting one extra for each path.  If
+     *  MAXPATHS is 0, there is no cache. */
+    public PathFinder(Graph<VLabel, ELabel> G, Distancer<? super VLabel> h,
+                      int maxPaths, int maxEdges) {
+        this(new AdjacencyArrays<VLabel, ELabel>(G), G.isDirected(), h,
+             maxPaths, maxEdges);
+    }
+
+    /** A PathFinder for a graph given directly in compressed sparse row
+     *  form, rather than as a Graph, using H, MAXPATHS, and MAXEDGES as
+     *  for PathFinder(G, H, MAXPATHS, MAXEDGES).  The graph has vertices
+     *  numbered 0 .. LABELS.size() - 1, labeled LABELS, and the edges of
+     *  vertex #v lead to the vertices #TARGETS[k] and weigh WEIGHTS[k],
+     *  for OFFSETS[v] <= k < OFFSETS[v + 1].  If the graph is not
+     *  DIRECTED, each edge must appear at both of its ends.  Paths are
+     *  then asked for by vertex number, and given as adjacency entries k.
+     *  The arrays and LABELS are not copied, and must not change. */
+    public PathFinder(int[] offsets, int[] targets, double[] weights,
+                      List<? extends VLabel> labels, boolean directed,
+                      Distancer<? super VLabel> h,
+                      int maxPaths, int maxEdges) {
+        this(new AdjacencyArrays<VLabel, ELabel>(offsets, targets), labels,
+             weights, directed, h, maxPaths, maxEdges);
+    }
+
+    /** A PathFinder for the snapshot ADJ of a graph that is DIRECTED or
+     *  not, with H, MAXPATHS, and MAXEDGES as for PathFinder(G, H,
+     *  MAXPATHS, MAXEDGES). */
+    private PathFinder(AdjacencyArrays<VLabel, ELabel> adj, boolean directed,
+                       Distancer<? super VLabel> h,
+                       int maxPaths, int maxEdges) {
+        this(adj, labels(adj), weights(adj), directed, h, maxPaths,
+             maxEdges);
+    }
+
+    /** A PathFinder for the snapshot ADJ of a graph that is DIRECTED or
+     *  not, whose vertices have labels LABELS and whose adjacency entries
+     *  have weights WEIGHTS, with H, MAXPATHS, and MAXEDGES as for
+     *  PathFinder(G, H, MAXPATHS, MAXEDGES). */
+    private PathFinder(AdjacencyArrays<VLabel, ELabel> adj,
+                       List<? extends VLabel> labels, double[] weights,
+                       boolean directed, Distancer<? super VLabel> h,
+                       int maxPaths, int maxEdges) {
+        _adj = adj;
+        _h = h;
+        int n = _adj.vertexSize();
+        if (labels.size() != n || weights.length != _adj.adjacencySize()) {
+            throw new IllegalArgumentException("mismatched arrays");
+        }
+        _labels = labels;
+        _weights = weights;
+        _inner = new boolean[n];
+        _next = new int[_weights.length];
+        Arrays.fill(_next, -1);
+        if (!directed) {
+            findChains();
+        }
+        _maxPaths = maxPaths;
+        _maxEdges = maxEdges;
+        _cache = maxPaths == 0 ? null
+            : new LinkedHashMap<Long, int[]>(16, 0.75f, true);
+    }
+
+    /** Returns the labels of the vertices of ADJ, by number. */
+    private static <VLabel, ELabel> List<VLabel>
+    labels(AdjacencyArrays<VLabel, ELabel> adj) {
+        int n = adj.vertexSize();
+        ArrayList<VLabel> result = new ArrayList<VLabel>(n);
+        for (int v = 0; v < n; v += 1) {
+            result.add(adj.vertex(v).getLabel());
+        }
+        return result;
+    }
+
+    /** Returns the weights of the edges of ADJ, by adjacency entry. */
+    private static <VLabel, ELabel extends Weighted> double[]
+    weights(AdjacencyArrays<VLabel, ELabel> adj) {
+        double[] result = new double[adj.adjacencySize()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = adj.edge(k).getLabel().weight();
+        }
+        return result;
+    }
+
+    /** Returns the edges of a path of minimum weight from V0 to V1, in
+     *  order, or null if there is no path.  The path from a vertex to
+     *  itself is empty.  Throws IllegalArgumentException if V0 or V1 was
+     *  not in the graph. */
+    public List<Graph<VLabel, ELabel>.Edge>
+    shortestPath(Graph<VLabel, ELabel>.Vertex v0,
+                 Graph<VLabel, ELabel>.Vertex v1) {
+        int source = _adj.indexOf(v0), dest = _adj.indexOf(v1);
+        if (source < 0 || dest < 0) {
+            throw new IllegalArgumentException("vertex not in graph");
+        }
+        int[] entries = path(source, dest);
+        if (entries == NO_PATH) {
+            return null;
+        }
+        ArrayList<Graph<VLabel, ELabel>.Edge> path =
+            new ArrayList<Graph<VLabel, ELabel>.Edge>(entries.length);
+        for (int k : entries) {
+            path.add(_adj.edge(k));
+        }
+        return path;
+    }
+
+    /** Returns the weight of a path of minimum weight from V0 to V1, or
+     *  Double.POSITIVE_INFINITY if there is none. */
+    public double distance(Graph<VLabel, ELabel>.Vertex v0,
+                           Graph<VLabel, ELabel>.Vertex v1) {
+        int source = _adj.indexOf(v0), dest = _adj.indexOf(v1);
+        if (source < 0 || dest < 0) {
+            throw new IllegalArgumentException("vertex not in graph");
+        }
+        int[] entries = path(source, dest);
+        if (entries == NO_PATH) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = 0.0;
+        for (int k : entries) {
+            cost += _weights[k];
+        }
+        return cost;
+    }
+
+    /** Returns the weights of paths of minimum weight from V0 to each of
+     *  the vertices in TARGETS, in order, with Double.POSITIVE_INFINITY
+     *  for those that cannot be reached.  This takes one search, which
+     *  does not use the distance measure, and stops once all of TARGETS
+     *  are reached; it is cheaper than asking for the distance to each
+     *  target in turn when there are several.  The paths found are not
+     *  cached. */
+    public double[] distances(Graph<VLabel, ELabel>.Vertex v0,
+                              List<Graph<VLabel, ELabel>.Vertex> targets) {
+        int source = _adj.indexOf(v0);
+        int[] dests = new int[targets.size()];
+        for (int i = 0; i < dests.length; i += 1) {
+            dests[i] = _adj.indexOf(targets.get(i));
+            if (dests[i] < 0) {
+                throw new IllegalArgumentException("vertex not in graph");
+            }
+        }
+        if (source < 0) {
+            throw new IllegalArgumentException("vertex not in graph");
+        }
+        return distances(source, dests);
+    }
+
+    /** Returns the adjacency entries of the edges of a path of minimum
+     *  weight from vertex #V0 to vertex #V1, in order, or null if there
+     *  is none, for a PathFinder made from arrays.  The path from a vertex
+     *  to itself is empty.  Throws IllegalArgumentException if there is
+     *  no vertex #V0 or #V1. */
+    public int[] shortestPath(int v0, int v1) {
+        checkVertex(v0);
+        checkVertex(v1);
+        int[] entries = path(v0, v1);
+        return entries == NO_PATH ? null : entries.clone();
+    }
+
+    /** Returns the weights of paths of minimum weight from vertex #V0 to
+     *  each of the vertices #TARGETS, as for distances(Vertex, List), for
+     *  a PathFinder made from arrays. */
+    public double[] distances(int v0, int[] targets) {
+        checkVertex(v0);
+        for (int v : targets) {
+            checkVertex(v);
+        }
+        Workspace w = _workspaces.get();
+        w.searchAll(v0, targets);
+        double[] result = new double[targets.length];
+        for (int i = 0; i < targets.length; i += 1) {
+            result[i] = w._stamp[targets[i]] == w._search
+                ? w._cost[targets[i]] : Double.POSITIVE_INFINITY;
+        }
+        return result;
+    }
+
+    /** Returns the number of vertices that searches step over: the
+     *  vertices inside chains. */
+    public int innerVertices() {
+        int count = 0;
+        for (boolean inner : _inner) {
+            if (inner) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of requests for paths that were found in my
+     *  cache. */
+    public synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of requests for paths that were not found in
+     *  my cache. */
+    public synchronized long misses() {
+        return _misses;
+    }
+
+    /** Returns the number of paths in my cache. */
+    public synchronized int cachedPaths() {
+        return _cache == null ? 0 : _cache.size();
+    }
+
+    /** Throws IllegalArgumentException if there is no vertex #V. */
+    private void checkVertex(int v) {
+        if (v < 0 || v >= _adj.vertexSize()) {
+            throw new IllegalArgumentException("vertex not in graph");
+        }
+    }
+
+    /** Returns the adjacency entries of the edges of a path of minimum
+     *  weight from vertex #SOURCE to vertex #DEST, in order, or NO_PATH
+     *  if there is none, using and updating my cache. */
+    private int[] path(int source, int dest) {
+        Long key = null;
+        if (_cache != null) {
+            key = (long) source * _adj.vertexSize() + dest;
+            synchronized (this) {
+                int[] entries = _cache.get(key);
+                if (entries != null) {
+                    _hits += 1;
+                    return entries;
+                }
+                _misses += 1;
+            }
+        }
+        Workspace w = _workspaces.get();
+        int[] entries;
+        if (!w.search(source, dest)) {
+            entries = NO_PATH;
+        } else {
+            int length = 0;
+            for (int v = dest; v != source; v = w._from[v]) {
+                for (int k = w._entry[v]; true; k = _next[k]) {
+                    length += 1;
+                    if (!w.passes(_adj.target(k))) {
+                        break;
+                    }
+                }
+            }
+            entries = new int[length];
+            for (int v = dest; v != source; v = w._from[v]) {
+                int end = length;
+                for (int k = w._entry[v]; true; k = _next[k]) {
+                    length -= 1;
+                    if (!w.passes(_adj.target(k))) {
+                        break;
+                    }
+                }
+                int k = w._entry[v];
+                for (int i = length; i < end; i += 1) {
+                    entries[i] = k;
+                    k = _next[k];
+                }
+            }
+        }
+        if (key != null) {
+            cache(key, entries);
+        }
+        return entries;
+    }
+
+    /** Mark the vertices inside chains in _inner, and set _next to link
+     *  the adjacency entries along each chain.  A vertex is inside a
+     *  chain if it has exactly two adjacency entries, to two distinct
+     *  other vertices. */
+    private void findChains() {
+        int n = _adj.vertexSize();
+        for (int v = 0; v < n; v += 1) {
+            int k = _adj.offset(v);
+            _inner[v] = _adj.offset(v + 1) - k == 2
+                && _adj.target(k) != _adj.target(k + 1)
+                && _adj.target(k) != v && _adj.target(k + 1) != v;
+        }
+        for (int v = 0; v < n; v += 1) {
+            for (int k = _adj.offset(v); k < _adj.offset(v + 1); k += 1) {
+                int u = _adj.target(k);
+                if (_inner[u]) {
+                    int out = _adj.offset(u);
+                    _next[k] = _adj.target(out) == v ? out + 1 : out;
+                }
+            }
+        }
+    }
+
+    /** Add ENTRIES to my cache as the path for KEY, discarding the least
+     *  recently used paths as needed to keep within my limits. */
+    private void cache(Long key, int[] entries) {
+        int weight = entries.length + 1;
+        if (weight > _maxEdges) {
+            return;
+        }
+        synchronized (this) {
+            int[] old = _cache.put(key, entries);
+            if (old != null) {
+                _cachedEdges -= old.length + 1;
+            }
+            _cachedEdges += weight;
+            Iterator<int[]> eldest = _cache.values().iterator();
+            while (_cache.size() > _maxPaths || _cachedEdges > _maxEdges) {
+                _cachedEdges -= eldest.next().length + 1;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** The per-vertex state of the searches of one thread. */
+    private class Workspace {
+
+        /** A workspace for my graph. */
+        Workspace() {
+            int n = _adj.vertexSize();
+            _stamp = new int[n];
+            _goal = new int[n];
+            _cost = new double[n];
+            _estimate = new double[n];
+            _from = new int[n];
+            _entry = new int[n];
+            _heapVertex = new int[INITIAL_HEAP];
+            _heapCost = new double[INITIAL_HEAP];
+            _heapKey = new double[INITIAL_HEAP];
+            _heapSeq = new long[INITIAL_HEAP];
+        }
+
+        /** Search for a path of minimum weight from vertex #SOURCE to
+         *  vertex #DEST, recording in _cost, _from, and _entry the best
+         *  paths found.  Returns true iff DEST was reached. */
+        boolean search(int source, int dest) {
+            start(source);
+            _goal[dest] = _search;
+            VLabel goal = _labels.get(dest);
+            reach(source, 0.0, -1, -1, goal);
+            while (_size > 0) {
+                int v = _heapVertex[0];
+                double cost = _heapCost[0];
+                pop();
+                if (cost > _cost[v]) {
+                    continue;
+                }
+                if (v == dest) {
+                    return true;
+                }
+                expand(v, cost, goal);
+            }
+            return false;
+        }
+
+        /** Search for paths of minimum weight from vertex #SOURCE to each
+         *  of the vertices #DESTS, without using the distance measure,
+         *  until all of DESTS are reached, recording the best paths found
+         *  as for search. */
+        void searchAll(int source, int[] dests) {
+            start(source);
+            int remaining = 0;
+            for (int v : dests) {
+                if (_goal[v] != _search) {
+                    _goal[v] = _search;
+                    remaining += 1;
+                }
+            }
+            reach(source, 0.0, -1, -1, null);
+            while (_size > 0) {
+                int v = _heapVertex[0];
+                double cost = _heapCost[0];
+                pop();
+                if (cost > _cost[v]) {
+                    continue;
+                }
+                if (_goal[v] == _search) {
+                    _goal[v] = 0;
+                    remaining -= 1;
+                    if (remaining == 0) {
+                        return;
+                    }
+                }
+                expand(v, cost, null);
+            }
+        }
+
+        /** Returns true iff the current search steps over vertex #V. */
+        boolean passes(int v) {
+            return _inner[v] && v != _source && _goal[v] != _search;
+        }
+
+        /** Begin a new search from vertex #SOURCE. */
+        private void start(int source) {
+            _search += 1;
+            if (_search == 0) {
+                Arrays.fill(_stamp, 0);
+                Arrays.fill(_goal, 0);
+                _search = 1;
+            }
+            _source = source;
+            _size = 0;
+            _seq = 0;
+        }
+
+        /** Reach the neighbors of vertex #V, which is reached with cost
+         *  COST, stepping over chains, and estimating distances to GOAL
+         *  (if not null). */
+        private void expand(int v, double cost, VLabel goal) {
+            for (int k = _adj.offset(v); k < _adj.offset(v + 1); k += 1) {
+                int u = _adj.target(k);
+                double c = cost + _weights[k];
+                for (int j = k; passes(u); ) {
+                    j = _next[j];
+                    u = _adj.target(j);
+                    c += _weights[j];
+                }
+                if (_stamp[u] != _search || c < _cost[u]) {
+                    reach(u, c, v, k, goal);
+                }
+            }
+        }
+
+        /** Record that vertex #V is reached with cost COST from vertex
+         *  #FROM along adjacency entry #ENTRY, and add it to the fringe,
+         *  estimating its distance to GOAL (if not null) as needed. */
+        private void reach(int v, double cost, int from, int entry,
+                           VLabel goal) {
+            if (_stamp[v] != _search) {
+                _stamp[v] = _search;
+                _estimate[v] = goal == null ? 0.0
+                    : _h.dist(_labels.get(v), goal);
+            }
+            _cost[v] = cost;
+            _from[v] = from;
+            _entry[v] = entry;
+            push(v, cost, cost + _estimate[v]);
+        }
+
+        /** Add vertex #V, with cost COST and key KEY, to the heap. */
+        private void push(int v, double cost, double key) {
+            if (_size == _heapVertex.length) {
+                _heapVertex = Arrays.copyOf(_heapVertex, 2 * _size);
+                _heapCost = Arrays.copyOf(_heapCost, 2 * _size);
+                _heapKey = Arrays.copyOf(_heapKey, 2 * _size);
+                _heapSeq = Arrays.copyOf(_heapSeq, 2 * _size);
+            }
+            int i = _size;
+            _size += 1;
+            long seq = _seq;
+            _seq += 1;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!less(key, seq, _heapKey[parent], _heapSeq[parent])) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+            set(i, v, cost, key, seq);
+        }
+
+        /** Remove the first entry of the heap. */
+        private void pop() {
+            _size -= 1;
+            if (_size == 0) {
+                return;
+            }
+            int v = _heapVertex[_size];
+            double cost = _heapCost[_size], key = _heapKey[_size];
+            long seq = _heapSeq[_size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= _size) {
+                    break;
+                }
+                if (child + 1 < _size
+                    && less(_heapKey[child + 1], _heapSeq[child + 1],
+                            _heapKey[child], _heapSeq[child])) {
+                    child += 1;
+                }
+                if (!less(_heapKey[child], _heapSeq[child], key, seq)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            set(i, v, cost, key, seq);
+        }
+
+        /** Returns true iff an entry with key KEY0 added as number SEQ0
+         *  comes before one with key KEY1 added as number SEQ1. */
+        private boolean less(double key0, long seq0, double key1,
+                             long seq1) {
+            return key0 < key1 || (key0 == key1 && seq0 < seq1);
+        }
+
+        /** Move heap entry #FROM to entry #TO. */
+        private void move(int from, int to) {
+            set(to, _heapVertex[from], _heapCost[from], _heapKey[from],
+                _heapSeq[from]);
+        }
+
+        /** Set heap entry #I to vertex #V with cost COST, key KEY, and
+         *  number SEQ. */
+        private void set(int i, int v, double cost, double key, long seq) {
+            _heapVertex[i] = v;
+            _heapCost[i] = cost;
+            _heapKey[i] = key;
+            _heapSeq[i] = seq;
+        }
+
+        /** The number of the current search. */
+        private int _search;
+        /** The search in which each vertex was last reached; the other
+         *  entries for a vertex are meaningful only in that search. */
+        private final int[] _stamp;
+        /** The search in which each vertex is a destination not yet
+         *  reached. */
+        private final int[] _goal;
+        /** The source of the current search. */
+        private int _source;
+        /** Weight of the best path found to each vertex. */
+        private final double[] _cost;
+        /** Estimated distance from each vertex to the destination. */
+        private final double[] _estimate;
+        /** Previous vertex on the best path found to each vertex, not
+         *  counting vertices stepped over. */
+        private final int[] _from;
+        /** Adjacency entry of the first edge of the path from that vertex,
+         *  which continues through the vertices stepped over. */
+        private final int[] _entry;
+        /** The heap: vertex, path weight, key, and number of each entry. */
+        private int[] _heapVertex;
+        /** Path weights of the heap entries. */
+        private double[] _heapCost;
+        /** Keys (estimated total path weights) of the heap entries. */
+        private double[] _heapKey;
+        /** Numbers of the heap entries, in order of addition. */
+        private long[] _heapSeq;
+        /** Number of heap entries. */
+        private int _size;
+        /** Number of the next heap entry. */
+        private long _seq;
+    }
+
+    /** Initial size of a workspace's heap. */
+    private static final int INITIAL_HEAP = 64;
+    /** The adjacency entries standing for the lack of a path. */
+    private static final int[] NO_PATH = new int[0];
+
+    /** The snapshot of the graph. */
+    private final AdjacencyArrays<VLabel, ELabel> _adj;
+    /** The distance measure. */
+    private final Distancer<? super VLabel> _h;
+    /** The label of each vertex, by number. */
+    private final List<? extends VLabel> _labels;
+    /** The weight of the edge at each adjacency entry. */
+    private final double[] _weights;
+    /** True for each vertex inside a chain. */
+    private final boolean[] _inner;
+    /** For each adjacency entry leading to a vertex inside a chain, the
+     *  entry at that vertex that continues along the chain; otherwise
+     *  -1. */
+    private final int[] _next;
+    /** The workspace of each thread. */
+    private final ThreadLocal<Workspace> _workspaces =
+        new ThreadLocal<Workspace>() {
+            @Override
+            protected Workspace initialValue() {
+                return new Workspace();
+            }
+        };
+    /** The cached paths, keyed by source and destination vertex numbers,
+     *  in order of use, or null if there is no cache.  It, and the counts
+     *  below, are guarded by this PathFinder. */
+    private final LinkedHashMap<Long, int[]> _cache;
+    /** Limits on the number of cached paths and the number of entries in
+     *  them, counting one extra for each path. */
+    private final int _maxPaths, _maxEdges;
+    /** Number of entries in the cached paths, counting one extra for each
+     *  path. */
+    private int _cachedEdges;
+    /** Number of requests for paths found and not found in the cache. */
+    private long _hits, _misses;
+
+}
@@ -1,18 +1,25 @@
 package graph;
 
 /** An unchecked exception that is intended to signal that a particular
- *  Edge or Vertex is not to be traversed.
+ *  Edge or Vertex is not to be traversed.  RejectExceptions carry no stack
+ *  trace, since they are used for control flow and may be thrown once per
+ *  edge; a client may throw the shared instance REJECT instead of
+ *  allocating a new one each time.
  *  @author P. N. Hilfinger
  */
 public class RejectException extends RuntimeException {
 
+    /** A shared RejectException with no message. */
+    public static final RejectException REJECT = new RejectException();
+
     /** A RejectException with no message. */
     public RejectException() {
+        super(null, null, false, false);
     }
 
     /** A RejectException with MSG as its message. */
     public RejectException(String msg) {
-        super(msg);
+        super(msg, null, false, false);
     }
 
 }
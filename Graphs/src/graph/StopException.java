@@ -1,18 +1,24 @@
 package graph;
 
 /** An unchecked exception that is intended to terminate a traversal
- *  prematurely.
+ *  prematurely.  StopExceptions carry no stack trace, since they are used
+ *  for control flow; a client may throw the shared instance STOP instead
+ *  of allocating a new one each time.
  *  @author P. N. Hilfinger
  */
 public class StopException extends RuntimeException {
 
+    /** A shared StopException with no message. */
+    public static final StopException STOP = new StopException();
+
     /** A StopException with no message. */
     public StopException() {
+        super(null, null, false, false);
     }
 
     /** A StopException with MSG as its message. */
     public StopException(String msg) {
-        super(msg);
+        super(msg, null, false, false);
     }
 
 }
@@ -0,0 +1,284 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** A topological order of the vertices of a directed acyclic graph, kept
+ *  up to date as vertices and edges are added.  In the order, the source
+ *  of every edge precedes its target.  Vertices and edges must be added
+ *  to the graph through this object; it does not notice changes made to
+ *  the graph directly.
+ *
+ *  Insertions use the algorithm of Pearce and Kelly.  Each vertex has a
+ *  position.  An edge (X, Y) with X already before Y needs no work.
+ *  Otherwise, only the vertices whose positions lie between those of Y
+ *  and X can be out of order: a forward search from Y and a backward
+ *  search from X, each confined to that range, find the vertices that
+ *  must move (and find X itself if the edge would close a cycle), and
+ *  those vertices are reassigned the positions they already occupy, the
+ *  ones reaching X first.  The cost of an insertion thus depends on the
+ *  size of the affected region rather than on the size of the graph.
+ *  @author Austin Gandy
+ */
+public class TopologicalOrder<VLabel, ELabel> {
+
+    /** A topological order of the vertices of G, which must be acyclic.
+     *  Throws IllegalArgumentException if G has a cycle. */
+    public TopologicalOrder(DirectedGraph<VLabel, ELabel> G) {
+        _graph = G;
+        _index = new HashMap<Graph<VLabel, ELabel>.Vertex, Integer>();
+        _vertices = new ArrayList<Graph<VLabel, ELabel>.Vertex>();
+        int n = G.vertexSize();
+        _position = new int[Math.max(n, 1)];
+        _atPosition = new int[Math.max(n, 1)];
+        _out = new int[Math.max(n, 1)][];
+        _in = new int[Math.max(n, 1)][];
+        _outSize = new int[Math.max(n, 1)];
+        _inSize = new int[Math.max(n, 1)];
+        _mark = new int[Math.max(n, 1)];
+        List<List<Graph<VLabel, ELabel>.Vertex>> components =
+            Graphs.stronglyConnectedComponents(G);
+        for (int c = components.size() - 1; c >= 0; c -= 1) {
+            if (components.get(c).size() > 1) {
+                throw new IllegalArgumentException("graph has a cycle");
+            }
+            newVertex(components.get(c).get(0));
+        }
+        for (Graph<VLabel, ELabel>.Edge e : G.edges()) {
+            int x = _index.get(e.getV0()), y = _index.get(e.getV1());
+            if (x == y) {
+                throw new IllegalArgumentException("graph has a cycle");
+            }
+            link(x, y);
+        }
+    }
+
+    /** Returns the graph whose order I keep. */
+    public DirectedGraph<VLabel, ELabel> getGraph() {
+        return _graph;
+    }
+
+    /** Returns the number of vertices. */
+    public int size() {
+        return _vertices.size();
+    }
+
+    /** Returns a new vertex labeled LABEL, added to my graph and placed
+     *  last in the order. */
+    public Graph<VLabel, ELabel>.Vertex add(VLabel label) {
+        Graph<VLabel, ELabel>.Vertex v = _graph.add(label);
+        newVertex(v);
+        return v;
+    }
+
+    /** Returns a new edge from FROM to TO labeled LABEL, added to my
+     *  graph after reordering the vertices as needed.  Throws
+     *  IllegalArgumentException, leaving the graph and order unchanged,
+     *  if the edge would create a cycle or either vertex is not in the
+     *  graph. */
+    public Graph<VLabel, ELabel>.Edge add(Graph<VLabel, ELabel>.Vertex from,
+                                          Graph<VLabel, ELabel>.Vertex to,
+                                          ELabel label) {
+        int x = indexOf(from), y = indexOf(to);
+        if (x == y) {
+            throw new IllegalArgumentException("edge would create a cycle");
+        }
+        if (_position[y] < _position[x]) {
+            reorder(x, y);
+        }
+        link(x, y);
+        return _graph.add(from, to, label);
+    }
+
+    /** Returns a new edge from FROM to TO with a null label, as for
+     *  add(FROM, TO, null). */
+    public Graph<VLabel, ELabel>.Edge add(Graph<VLabel, ELabel>.Vertex from,
+                                          Graph<VLabel, ELabel>.Vertex to) {
+        return add(from, to, null);
+    }
+
+    /** Returns the position of V in the order, from 0 to size() - 1. */
+    public int position(Graph<VLabel, ELabel>.Vertex v) {
+        return _position[indexOf(v)];
+    }
+
+    /** Returns true iff V0 comes before V1 in the order. */
+    public boolean precedes(Graph<VLabel, ELabel>.Vertex v0,
+                            Graph<VLabel, ELabel>.Vertex v1) {
+        return position(v0) < position(v1);
+    }
+
+    /** Returns the vertices in order. */
+    public List<Graph<VLabel, ELabel>.Vertex> order() {
+        ArrayList<Graph<VLabel, ELabel>.Vertex> result =
+            new ArrayList<Graph<VLabel, ELabel>.Vertex>(size());
+        for (int p = 0; p < size(); p += 1) {
+            result.add(_vertices.get(_atPosition[p]));
+        }
+        return result;
+    }
+
+    /** Returns the total number of vertices moved by insertions so far. */
+    public long moved() {
+        return _moved;
+    }
+
+    /** Make room for an edge from vertex #X to vertex #Y, where Y now
+     *  precedes X, by moving the vertices between them that must move.
+     *  Throws IllegalArgumentException if the edge would close a
+     *  cycle. */
+    private void reorder(int x, int y) {
+        int lower = _position[y], upper = _position[x];
+        _generation += 1;
+        int[] forward = search(y, _out, _outSize, lower, upper, x);
+        int[] backward = search(x, _in, _inSize, lower, upper, -1);
+        sortByPosition(forward);
+        sortByPosition(backward);
+        int n = forward.length + backward.length;
+        int[] slots = new int[n];
+        for (int i = 0; i < backward.length; i += 1) {
+            slots[i] = _position[backward[i]];
+        }
+        for (int i = 0; i < forward.length; i += 1) {
+            slots[backward.length + i] = _position[forward[i]];
+        }
+        Arrays.sort(slots);
+        for (int i = 0; i < n; i += 1) {
+            int v = i < backward.length ? backward[i]
+                : forward[i - backward.length];
+            _position[v] = slots[i];
+            _atPosition[slots[i]] = v;
+        }
+        _moved += n;
+    }
+
+    /** Returns the vertices reachable from vertex #START along the
+     *  adjacency lists EDGES (whose lengths are SIZES), following only
+     *  vertices whose positions lie in LOWER .. UPPER and that are not yet
+     *  marked in this generation, and marks them.  Throws
+     *  IllegalArgumentException if it reaches vertex #FORBIDDEN. */
+    private int[] search(int start, int[][] edges, int[] sizes, int lower,
+                         int upper, int forbidden) {
+        int[] found = new int[INITIAL_REGION];
+        int count = 0;
+        int[] stack = new int[INITIAL_REGION];
+        _mark[start] = _generation;
+        stack[0] = start;
+        int top = 1;
+        while (top > 0) {
+            top -= 1;
+            int v = stack[top];
+            if (count == found.length) {
+                found = Arrays.copyOf(found, 2 * count);
+            }
+            found[count] = v;
+            count += 1;
+            for (int k = 0; k < sizes[v]; k += 1) {
+                int w = edges[v][k];
+                if (w == forbidden) {
+                    throw new IllegalArgumentException("edge would create "
+                                                       + "a cycle");
+                }
+                int p = _position[w];
+                if (p >= lower && p <= upper && _mark[w] != _generation) {
+                    _mark[w] = _generation;
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * top);
+                    }
+                    stack[top] = w;
+                    top += 1;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /** Sort the vertex numbers in VERTICES by position. */
+    private void sortByPosition(int[] vertices) {
+        long[] keys = new long[vertices.length];
+        for (int i = 0; i < vertices.length; i += 1) {
+            keys[i] = ((long) _position[vertices[i]] << Integer.SIZE)
+                | vertices[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < vertices.length; i += 1) {
+            vertices[i] = (int) keys[i];
+        }
+    }
+
+    /** Number V, which must be new, and place it last in the order. */
+    private void newVertex(Graph<VLabel, ELabel>.Vertex v) {
+        int i = _vertices.size();
+        if (i == _position.length) {
+            int n = 2 * i;
+            _position = Arrays.copyOf(_position, n);
+            _atPosition = Arrays.copyOf(_atPosition, n);
+            _out = Arrays.copyOf(_out, n);
+            _in = Arrays.copyOf(_in, n);
+            _outSize = Arrays.copyOf(_outSize, n);
+            _inSize = Arrays.copyOf(_inSize, n);
+            _mark = Arrays.copyOf(_mark, n);
+        }
+        _index.put(v, i);
+        _vertices.add(v);
+        _position[i] = i;
+        _atPosition[i] = i;
+        _out[i] = EMPTY;
+        _in[i] = EMPTY;
+    }
+
+    /** Record an edge from vertex #X to vertex #Y. */
+    private void link(int x, int y) {
+        if (_outSize[x] == _out[x].length) {
+            _out[x] = Arrays.copyOf(_out[x], Math.max(2, 2 * _outSize[x]));
+        }
+        _out[x][_outSize[x]] = y;
+        _outSize[x] += 1;
+        if (_inSize[y] == _in[y].length) {
+            _in[y] = Arrays.copyOf(_in[y], Math.max(2, 2 * _inSize[y]));
+        }
+        _in[y][_inSize[y]] = x;
+        _inSize[y] += 1;
+    }
+
+    /** Returns the number of V.  Throws IllegalArgumentException if V is
+     *  not in my graph. */
+    private int indexOf(Graph<VLabel, ELabel>.Vertex v) {
+        Integer i = _index.get(v);
+        if (i == null) {
+            throw new IllegalArgumentException("vertex not in graph");
+        }
+        return i;
+    }
+
+    /** The initial size of the arrays holding an affected region. */
+    private static final int INITIAL_REGION = 16;
+    /** An empty adjacency list. */
+    private static final int[] EMPTY = new int[0];
+
+    /** The graph whose order I keep. */
+    private final DirectedGraph<VLabel, ELabel> _graph;
+    /** Maps each vertex to its number. */
+    private final HashMap<Graph<VLabel, ELabel>.Vertex, Integer> _index;
+    /** Each vertex, indexed by number. */
+    private final ArrayList<Graph<VLabel, ELabel>.Vertex> _vertices;
+    /** Position of each vertex in the order, indexed by number. */
+    private int[] _position;
+    /** Number of the vertex at each position. */
+    private int[] _atPosition;
+    /** Numbers of the targets of each vertex's outgoing edges. */
+    private int[][] _out;
+    /** Numbers of the sources of each vertex's incoming edges. */
+    private int[][] _in;
+    /** Lengths of the lists in _out and _in. */
+    private int[] _outSize, _inSize;
+    /** Generation in which each vertex was last reached by a search. */
+    private int[] _mark;
+    /** The current search generation. */
+    private int _generation;
+    /** Total number of vertices moved by insertions. */
+    private long _moved;
+
+}
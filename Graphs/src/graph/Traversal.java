@@ -2,8 +2,8 @@ package graph;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
 
 /** Implements a generalized traversal of a graph.  At any given time,
  *  there is a particular set of untraversed vertices---the "fringe."
@@ -33,6 +33,12 @@ import java.util.PriorityQueue;
  *  RejectException to prevent a vertex from being added to the
  *  fringe, and the visit method may throw a RejectException to
  *  prevent its successors from being added to the fringe.
+ *
+ *  Alternatively, the client may override preVisitAction, visitAction,
+ *  and postVisitAction, which return a VisitAction (CONTINUE, REJECT, or
+ *  STOP) with the same meanings instead of throwing.  The traversals
+ *  themselves only call these; by default they delegate to the
+ *  exception-throwing hooks above.
  *  @author Austin Gandy
  */
 public class Traversal<VLabel, ELabel> {
@@ -45,58 +51,72 @@ public class Traversal<VLabel, ELabel> {
     public void traverse(Graph<VLabel, ELabel> G,
                          Graph<VLabel, ELabel>.Vertex v,
                          Comparator<VLabel> order) {
+        _stats.start();
+        try {
+            traverseHelper(G, v, order);
+        } finally {
+            _stats.finish();
+        }
+    }
+
+    /** Performs the traversal for the public version of traverse, on G
+     *  from V using ORDER. */
+    private void traverseHelper(Graph<VLabel, ELabel> G,
+                                Graph<VLabel, ELabel>.Vertex v,
+                                Comparator<VLabel> order) {
         checkInfo(G, "generic");
         _lastTraversal = "generic";
         _lastOrder = order;
         Graph<VLabel, ELabel>.Vertex currVert = v;
         Graph<VLabel, ELabel>.Vertex nextVert;
-        _currentOrder = order;
-        Comparator<Graph<VLabel, ELabel>.Vertex> vertCompare =
-                new Comparator<Graph<VLabel, ELabel>.Vertex>() {
-                    @Override
-                    public int compare(Graph<VLabel, ELabel>.Vertex x1,
-                            Graph<VLabel, ELabel>.Vertex x2) {
-                        return _currentOrder.compare(x1.getLabel(),
-                                x2.getLabel());
-                    }
-                };
-        try {
-            visit(v);
-            _visited.add(v);
-            _nonPost.add(v);
-            PriorityQueue<Graph<VLabel, ELabel>.Vertex> fringe =
-                    new PriorityQueue<Graph<VLabel, ELabel>.Vertex>(5,
-                            vertCompare);
+        VisitAction action = countedVisit(v);
+        if (action == VisitAction.STOP) {
+            saveStuff(null, v, G);
+            return;
+        }
+        _visited.add(v);
+        _nonPost.add(v);
+        VertexFringe<VLabel, ELabel> fringe =
+                new VertexFringe<VLabel, ELabel>(order);
+        if (action != VisitAction.REJECT) {
             addAdjacent(G, v, fringe);
-            while (_visited.size() < G.vertexSize() && fringe.size() > 0) {
-                currVert = fringe.poll();
-                visit(currVert);
-                _visited.add(currVert);
-                for (Graph<VLabel, ELabel>.Edge edge : G.edges(currVert)) {
-                    nextVert = edge.getV(currVert);
-                    try {
-                        preVisit(edge, nextVert);
-                    } catch (RejectException e) {
-                        continue;
-                    } catch (StopException e) {
-                        _finalEdge = edge;
-                        _finalVertex = null;
-                        _graph = G;
-                        return;
-                    }
-                    fringe.add(nextVert);
+        }
+        while (!fringe.isEmpty()) {
+            currVert = fringe.poll();
+            _stats.heapOperation();
+            action = countedVisit(currVert);
+            if (action == VisitAction.STOP) {
+                saveStuff(null, currVert, G);
+                return;
+            }
+            _visited.add(currVert);
+            if (action == VisitAction.REJECT) {
+                continue;
+            }
+            for (Graph<VLabel, ELabel>.Edge edge : G.edges(currVert)) {
+                _stats.edgeScanned();
+                nextVert = edge.getV(currVert);
+                if (_visited.contains(nextVert) || fringe.contains(nextVert)) {
+                    continue;
                 }
+                action = countedPreVisit(edge, nextVert);
+                if (action == VisitAction.REJECT) {
+                    continue;
+                } else if (action == VisitAction.STOP) {
+                    saveStuff(edge, nextVert, G);
+                    return;
+                }
+                fringe.add(nextVert);
+                _stats.heapOperation();
+                _stats.fringeSize(fringe.size());
             }
-            checkPost(G);
-            _visited.clear();
-            _nonPost.clear();
-            _posted.clear();
-        } catch (StopException e) {
-            _finalVertex = currVert;
-            _finalEdge = null;
-            _graph = G;
+        }
+        if (!checkPost(G)) {
             return;
         }
+        _visited.clear();
+        _nonPost.clear();
+        _posted.clear();
     }
 
     /** Performs a depth-first traversal of G over all vertices
@@ -109,40 +129,48 @@ public class Traversal<VLabel, ELabel> {
                                    Graph<VLabel, ELabel>.Vertex v) {
         _lastTraversal = "dft";
         _visited.clear();
-        _justStopped = false;
+        _stats.start();
         try {
             depthFirstTraverseHelper(G, v);
-        } catch (StopException e) {
-            return;
+        } finally {
+            _stats.finish();
         }
     }
 
     /** Takes care of the recursion for the public version of
-     * depthFirstTraverse. starts recursing on V then goes to the neighbors of V
-     * in G. Recursively @throws StopException for up to the parent. */
-    private void depthFirstTraverseHelper(Graph<VLabel, ELabel> G,
-            Graph<VLabel, ELabel>.Vertex v) throws StopException {
-        visit(v);
+     *  depthFirstTraverse. starts recursing on V then goes to the neighbors
+     *  of V in G. Returns false iff one of the visiting hooks halted the
+     *  traversal, in which case the callers unwind without visiting
+     *  anything further. */
+    private boolean depthFirstTraverseHelper(Graph<VLabel, ELabel> G,
+            Graph<VLabel, ELabel>.Vertex v) {
+        VisitAction action = countedVisit(v);
+        if (action == VisitAction.STOP) {
+            saveStuff(null, v, G);
+            return false;
+        }
         _visited.add(v);
-        for (Graph<VLabel, ELabel>.Edge edge : G.edges(v)) {
-            try {
-                preVisit(edge, edge.getV(v));
-                if (!_visited.contains(edge.getV(v))) {
-                    _visited.add(v);
-                    depthFirstTraverseHelper(G, edge.getV(v));
-                }
-            } catch (RejectException e) {
-                continue;
-            } catch (StopException e) {
-                if (_justStopped) {
-                    _justStopped = false;
-                    _finalEdge = edge;
-                    _finalVertex = edge.getV(v);
+        if (action != VisitAction.REJECT) {
+            for (Graph<VLabel, ELabel>.Edge edge : G.edges(v)) {
+                _stats.edgeScanned();
+                Graph<VLabel, ELabel>.Vertex next = edge.getV(v);
+                action = countedPreVisit(edge, next);
+                if (action == VisitAction.STOP) {
+                    saveStuff(edge, next, G);
+                    return false;
+                } else if (action == VisitAction.REJECT
+                           || _visited.contains(next)) {
+                    continue;
+                } else if (!depthFirstTraverseHelper(G, next)) {
+                    return false;
                 }
-                throw new StopException();
             }
         }
-        postVisit(v);
+        if (postVisitAction(v) == VisitAction.STOP) {
+            saveStuff(null, v, G);
+            return false;
+        }
+        return true;
     }
 
     /** Performs a breadth-first traversal of G over all vertices
@@ -153,64 +181,113 @@ public class Traversal<VLabel, ELabel> {
      *  the postVisit method on it. */
     public void breadthFirstTraverse(Graph<VLabel, ELabel> G,
                                      Graph<VLabel, ELabel>.Vertex v) {
+        _stats.start();
+        try {
+            breadthFirstTraverseHelper(G, v);
+        } finally {
+            _stats.finish();
+        }
+    }
+
+    /** Performs the traversal for the public version of
+     *  breadthFirstTraverse, on G from V. */
+    private void breadthFirstTraverseHelper(Graph<VLabel, ELabel> G,
+                                            Graph<VLabel, ELabel>.Vertex v) {
         checkInfo(G, "bft");
         Graph<VLabel, ELabel>.Vertex currVert = v;
         Graph<VLabel, ELabel>.Vertex nextVert;
         LinkedList<Graph<VLabel, ELabel>.Vertex> fringe =
                 new LinkedList<Graph<VLabel, ELabel>.Vertex>();
         LinkedList<Boolean> shouldVisit = new LinkedList<Boolean>();
-        try {
-            visit(currVert);
-            _visited.add(currVert);
+        VisitAction action = countedVisit(currVert);
+        if (action == VisitAction.STOP) {
+            saveStuff(null, currVert, G);
+            return;
+        }
+        _visited.add(currVert);
+        if (action != VisitAction.REJECT) {
             for (Graph<VLabel, ELabel>.Edge edge : G.edges(currVert)) {
-                try {
-                    preVisit(edge, edge.getV(edge.getV(currVert)));
-                    fringe.add(edge.getV(currVert));
-                    shouldVisit.add(true);
-                } catch (RejectException e) {
+                _stats.edgeScanned();
+                action = countedPreVisit(edge, currVert);
+                if (action == VisitAction.REJECT) {
+                    continue;
+                } else if (action == VisitAction.STOP) {
+                    saveStuff(edge, currVert, G);
+                    return;
+                }
+                fringe.add(edge.getV(currVert));
+                shouldVisit.add(true);
+            }
+        }
+        fringe.add(currVert);
+        shouldVisit.add(false);
+        while (_visited.size() < G.vertexSize() && fringe.size() > 0) {
+            currVert = fringe.poll();
+            if (shouldVisit.poll()) {
+                action = addStuff(fringe, shouldVisit, currVert, false);
+                if (action == VisitAction.STOP) {
+                    saveStuff(null, currVert, G);
+                    return;
+                } else if (action == VisitAction.REJECT) {
                     continue;
-                } catch (StopException e) {
-                    _finalEdge = edge;
-                    _finalVertex = null;
                 }
+            } else if (successorsVisited(currVert, G)) {
+                if (postVisitAction(currVert) == VisitAction.STOP) {
+                    saveStuff(null, currVert, G);
+                    return;
+                }
+            } else {
+                addStuff(fringe, shouldVisit, currVert, true);
+                continue;
             }
-            fringe.add(currVert);
-            shouldVisit.add(false);
-            while (_visited.size() < G.vertexSize() && fringe.size() > 0) {
-                currVert = fringe.poll();
-                if (shouldVisit.poll()) {
-                    addStuff(fringe, shouldVisit, currVert, false);
-                } else if (successorsVisited(currVert, G)) {
-                    postVisit(currVert);
-                } else {
-                    addStuff(fringe, shouldVisit, currVert, true);
+            for (Graph<VLabel, ELabel>.Edge edge : G.edges(currVert)) {
+                _stats.edgeScanned();
+                nextVert = edge.getV(currVert);
+                if (_visited.contains(nextVert)) {
                     continue;
                 }
-                for (Graph<VLabel, ELabel>.Edge edge : G.edges(currVert)) {
-                    nextVert = edge.getV(currVert);
-                    try {
-                        if (!_visited.contains(nextVert)) {
-                            preVisit(edge, nextVert);
-                            fringe.add(nextVert);
-                            shouldVisit.add(true);
-                        }
-                    } catch (RejectException e) {
-                        continue;
-                    } catch (StopException e) {
-                        saveStuff(edge, currVert, G);
-                        return;
-                    }
+                action = countedPreVisit(edge, nextVert);
+                if (action == VisitAction.REJECT) {
+                    continue;
+                } else if (action == VisitAction.STOP) {
+                    saveStuff(edge, nextVert, G);
+                    return;
                 }
+                fringe.add(nextVert);
+                shouldVisit.add(true);
+                _stats.fringeSize(fringe.size());
             }
-            while (fringe.size() > 0) {
-                postVisit(fringe.poll());
+        }
+        while (fringe.size() > 0) {
+            currVert = fringe.poll();
+            if (postVisitAction(currVert) == VisitAction.STOP) {
+                saveStuff(null, currVert, G);
+                return;
             }
-            clearStuff();
-        } catch (StopException e) {
-            _finalVertex = currVert;
-            _finalEdge = null;
-            _graph = G;
         }
+        clearStuff();
+    }
+
+    /** Calls preVisitAction(E, V0), recording the result in _stats, and
+     *  returns its result. */
+    private VisitAction countedPreVisit(Graph<VLabel, ELabel>.Edge e,
+                                        Graph<VLabel, ELabel>.Vertex v0) {
+        VisitAction action = preVisitAction(e, v0);
+        if (action == VisitAction.REJECT) {
+            _stats.rejected();
+        }
+        return action;
+    }
+
+    /** Calls visitAction(V), recording the visit in _stats, and returns
+     *  its result. */
+    private VisitAction countedVisit(Graph<VLabel, ELabel>.Vertex v) {
+        _stats.vertexVisited();
+        VisitAction action = visitAction(v);
+        if (action == VisitAction.REJECT) {
+            _stats.rejected();
+        }
+        return action;
     }
 
     /** Saves _finaleEdge to EDGE, _finalVertex to VERT and _graph to G. */
@@ -221,16 +298,22 @@ public class Traversal<VLabel, ELabel> {
         _graph = G;
     }
     /** takes in SHOULDVISIT and FRINGE linkedlists, and VERT and VISIT
-     *  vals to add to these lists. Adds vals to lists. */
-    private void addStuff(LinkedList<Graph<VLabel, ELabel>.Vertex> fringe,
+     *  vals to add to these lists. Adds vals to lists.  Returns the action
+     *  requested by visiting VERT, or CONTINUE if VERT is not visited. */
+    private VisitAction addStuff(
+            LinkedList<Graph<VLabel, ELabel>.Vertex> fringe,
             LinkedList<Boolean> shouldVisit,
             Graph<VLabel, ELabel>.Vertex vert, boolean visit) {
         fringe.add(vert);
         shouldVisit.add(visit);
         if (!visit) {
-            visit(vert);
-            _visited.add(vert);
+            VisitAction action = countedVisit(vert);
+            if (action != VisitAction.STOP) {
+                _visited.add(vert);
+            }
+            return action;
         }
+        return VisitAction.CONTINUE;
     }
 
 
@@ -265,24 +348,33 @@ public class Traversal<VLabel, ELabel> {
         _lastTraversal = traversal;
     }
 
-    /** adds all adjacent vertices in G of V to FRINGE. */
+    /** adds all adjacent vertices in G of V that have not yet been visited
+     *  to FRINGE. */
     private void addAdjacent(Graph<VLabel, ELabel> G,
             Graph<VLabel, ELabel>.Vertex v,
-            PriorityQueue<Graph<VLabel, ELabel>.Vertex> fringe) {
+            VertexFringe<VLabel, ELabel> fringe) {
         for (Graph<VLabel, ELabel>.Vertex vert : G.neighbors(v)) {
-            fringe.add(vert);
+            _stats.edgeScanned();
+            if (!_visited.contains(vert) && fringe.add(vert)) {
+                _stats.heapOperation();
+                _stats.fringeSize(fringe.size());
+            }
         }
     }
 
     /** Iterates through visited vertices, calls postVisit on any vertices whose
-     *  neighbors in G have already been visit. */
-    private void checkPost(Graph<VLabel, ELabel> G) {
+     *  neighbors in G have already been visit.  Returns false iff
+     *  postVisit halted the traversal. */
+    private boolean checkPost(Graph<VLabel, ELabel> G) {
         ArrayList<Graph<VLabel, ELabel>.Vertex> delete =
                 new ArrayList<Graph<VLabel, ELabel>.Vertex>();
         for (Graph<VLabel, ELabel>.Vertex v : _nonPost) {
             if (_posted.containsAll(toList(G.successors(v)))
                     || _visited.containsAll(toList(G.successors(v)))) {
-                postVisit(v);
+                if (postVisitAction(v) == VisitAction.STOP) {
+                    saveStuff(null, v, G);
+                    return false;
+                }
                 _posted.add(v);
                 delete.add(v);
             }
@@ -290,6 +382,7 @@ public class Traversal<VLabel, ELabel> {
         for (Graph<VLabel, ELabel>.Vertex del : delete) {
             _nonPost.remove(del);
         }
+        return true;
     }
 
     /** Changes an Iteration ITER to a list and returns that list. */
@@ -319,6 +412,18 @@ public class Traversal<VLabel, ELabel> {
         }
     }
 
+    /** Cause subsequent traversals to record their counters and timings in
+     *  STATS, or to record nothing if STATS is null. */
+    public void setStats(TraversalStats stats) {
+        _stats = stats == null ? TraversalStats.NONE : stats;
+    }
+
+    /** Returns the TraversalStats set by setStats, or TraversalStats.NONE
+     *  if there is none. */
+    public TraversalStats stats() {
+        return _stats;
+    }
+
     /** If the traversal ends prematurely, returns the Vertex argument to
      *  preVisit, visit, or postVisit that caused a Visit routine to
      *  return false.  Otherwise, returns null. */
@@ -362,6 +467,57 @@ public class Traversal<VLabel, ELabel> {
     protected void postVisit(Graph<VLabel, ELabel>.Vertex v) {
     }
 
+    /** Method called by the traversals when adding the node at the other
+     *  end of E from V0 to the fringe.  Returns CONTINUE to add it, REJECT
+     *  if the edge E is not to be traversed, and STOP to end the traversal.
+     *  This is the exception-free form of preVisit: the default calls
+     *  preVisit and converts a RejectException or StopException it throws
+     *  into the corresponding action.  Clients that reject or stop often
+     *  should override this method instead of preVisit. */
+    protected VisitAction preVisitAction(Graph<VLabel, ELabel>.Edge e,
+                                         Graph<VLabel, ELabel>.Vertex v0) {
+        try {
+            preVisit(e, v0);
+            return VisitAction.CONTINUE;
+        } catch (RejectException excp) {
+            return VisitAction.REJECT;
+        } catch (StopException excp) {
+            return VisitAction.STOP;
+        }
+    }
+
+    /** Method called by the traversals when visiting vertex V.  Returns
+     *  CONTINUE normally, REJECT if the successors of V are not to be
+     *  visited from V, and STOP to end the traversal.  The default calls
+     *  visit and converts the exceptions it throws, as for
+     *  preVisitAction. */
+    protected VisitAction visitAction(Graph<VLabel, ELabel>.Vertex v) {
+        try {
+            visit(v);
+            return VisitAction.CONTINUE;
+        } catch (RejectException excp) {
+            return VisitAction.REJECT;
+        } catch (StopException excp) {
+            return VisitAction.STOP;
+        }
+    }
+
+    /** Method called by the traversals after finishing the traversal of
+     *  the successors of vertex V in pre- and post-order traversals.
+     *  Returns STOP to end the traversal; REJECT has the same effect as
+     *  CONTINUE.  The default calls postVisit and converts the exceptions
+     *  it throws, as for preVisitAction. */
+    protected VisitAction postVisitAction(Graph<VLabel, ELabel>.Vertex v) {
+        try {
+            postVisit(v);
+            return VisitAction.CONTINUE;
+        } catch (RejectException excp) {
+            return VisitAction.REJECT;
+        } catch (StopException excp) {
+            return VisitAction.STOP;
+        }
+    }
+
     /** The Vertex (if any) that terminated the last traversal. */
     protected Graph<VLabel, ELabel>.Vertex _finalVertex;
     /** The Edge (if any) that terminated the last traversal. */
@@ -371,22 +527,19 @@ public class Traversal<VLabel, ELabel> {
     /** String that indicates which traversal was the last one called. Important
      *  for continueTraversal. */
     private String _lastTraversal;
-    /** ArrayList of already visited vertices. */
-    private ArrayList<Graph<VLabel, ELabel>.Vertex> _visited =
-            new ArrayList<Graph<VLabel, ELabel>.Vertex>();
+    /** Set of already visited vertices. */
+    private HashSet<Graph<VLabel, ELabel>.Vertex> _visited =
+            new HashSet<Graph<VLabel, ELabel>.Vertex>();
     /** ArrayList of vertices that have been visited, but haven't been
      * postVisited. */
     private ArrayList<Graph<VLabel, ELabel>.Vertex> _nonPost =
             new ArrayList<Graph<VLabel, ELabel>.Vertex>();
     /** Comparator used to order a generic traversal. */
     private Comparator<VLabel> _lastOrder;
+    /** Where counters and timings are recorded. */
+    private TraversalStats _stats = TraversalStats.NONE;
     /** List of vertices that have been postVisited. */
     private ArrayList<Graph<VLabel, ELabel>.Vertex> _posted =
             new ArrayList<Graph<VLabel, ELabel>.Vertex>();
-    /** the current ordering for _edges. */
-    private Comparator<VLabel> _currentOrder;
-    /** boolean used to determine whether or not to reset _finalEdge and
-     * _finalVertex when recursing through a depth first traversal. */
-    private Boolean _justStopped;
 
 }
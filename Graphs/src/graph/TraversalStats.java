@@ -0,0 +1,156 @@
+package graph;
+
+/** Counters and timings describing a single run of a traversal or search
+ *  (a Traversal method or Graphs.shortestPath).  A client that wants these
+ *  figures passes a TraversalStats to setStats on a Traversal, or to the
+ *  corresponding version of shortestPath.  Each run resets the counters
+ *  when it starts and calls runFinished when it ends, so a subclass may
+ *  override runFinished to collect the figures for every run; otherwise,
+ *  the object simply holds the figures for the most recent run.
+ *
+ *  Runs that are given no TraversalStats record into NONE, whose recording
+ *  methods do nothing.
+ *  @author Austin Gandy
+ */
+public class TraversalStats {
+
+    /** A TraversalStats that records nothing. */
+    public static final TraversalStats NONE = new TraversalStats() {
+        @Override
+        void start() {
+        }
+
+        @Override
+        void finish() {
+        }
+
+        @Override
+        void vertexVisited() {
+        }
+
+        @Override
+        void edgeScanned() {
+        }
+
+        @Override
+        void rejected() {
+        }
+
+        @Override
+        void fringeSize(int size) {
+        }
+
+        @Override
+        void heapOperation() {
+        }
+
+        @Override
+        void heuristicEvaluated() {
+        }
+    };
+
+    /** Returns the number of vertices visited (for a search, the number
+     *  removed from the open set and expanded). */
+    public long verticesVisited() {
+        return _verticesVisited;
+    }
+
+    /** Returns the number of edges examined. */
+    public long edgesScanned() {
+        return _edgesScanned;
+    }
+
+    /** Returns the number of edges or vertices rejected, either by a
+     *  visiting hook or, in a search, because a better path to the vertex
+     *  was already known. */
+    public long rejects() {
+        return _rejects;
+    }
+
+    /** Returns the largest size reached by the fringe (or open set). */
+    public long fringeHighWater() {
+        return _fringeHighWater;
+    }
+
+    /** Returns the number of insertions into and removals from a priority
+     *  queue. */
+    public long heapOperations() {
+        return _heapOperations;
+    }
+
+    /** Returns the number of evaluations of a heuristic distance. */
+    public long heuristicEvaluations() {
+        return _heuristicEvaluations;
+    }
+
+    /** Returns the elapsed time of the run in nanoseconds. */
+    public long wallTimeNanos() {
+        return _wallTimeNanos;
+    }
+
+    /** Called at the end of each run, after all figures are recorded.  The
+     *  default does nothing. */
+    protected void runFinished() {
+    }
+
+    @Override
+    public String toString() {
+        return String.format("visited=%d scanned=%d rejects=%d fringe=%d "
+                             + "heap=%d heuristic=%d time=%.3fms",
+                             _verticesVisited, _edgesScanned, _rejects,
+                             _fringeHighWater, _heapOperations,
+                             _heuristicEvaluations, _wallTimeNanos / 1e6);
+    }
+
+    /** Record the start of a run, clearing all figures. */
+    void start() {
+        _verticesVisited = _edgesScanned = _rejects = _fringeHighWater = 0;
+        _heapOperations = _heuristicEvaluations = _wallTimeNanos = 0;
+        _startTime = System.nanoTime();
+    }
+
+    /** Record the end of a run. */
+    void finish() {
+        _wallTimeNanos = System.nanoTime() - _startTime;
+        runFinished();
+    }
+
+    /** Record a visit to a vertex. */
+    void vertexVisited() {
+        _verticesVisited += 1;
+    }
+
+    /** Record the examination of an edge. */
+    void edgeScanned() {
+        _edgesScanned += 1;
+    }
+
+    /** Record a rejected edge or vertex. */
+    void rejected() {
+        _rejects += 1;
+    }
+
+    /** Record that the fringe now has SIZE elements. */
+    void fringeSize(int size) {
+        if (size > _fringeHighWater) {
+            _fringeHighWater = size;
+        }
+    }
+
+    /** Record an insertion into or removal from a priority queue. */
+    void heapOperation() {
+        _heapOperations += 1;
+    }
+
+    /** Record an evaluation of a heuristic. */
+    void heuristicEvaluated() {
+        _heuristicEvaluations += 1;
+    }
+
+    /** Figures for the current or last run. */
+    private long _verticesVisited, _edgesScanned, _rejects, _fringeHighWater,
+        _heapOperations, _heuristicEvaluations, _wallTimeNanos;
+    /** Value of System.nanoTime() at the start of the current run. */
+    private long _startTime;
+
+}
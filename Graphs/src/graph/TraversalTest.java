@@ -75,6 +75,43 @@ public class TraversalTest {
         }
     }
 
+    /** A traversal that uses the action-returning hooks, rejecting edges
+     *  into the vertex labeled _reject and stopping at the vertex labeled
+     *  _stop. */
+    private class ActionTester extends Traversal<String, String> {
+
+        /** A tester that rejects REJECT and stops at STOP. */
+        ActionTester(String reject, String stop) {
+            _reject = reject;
+            _stop = stop;
+        }
+
+        @Override
+        protected VisitAction preVisitAction(Graph<String, String>.Edge e,
+                                             Graph<String, String>.Vertex v0) {
+            if (v0.getLabel().equals(_reject)) {
+                return VisitAction.REJECT;
+            }
+            return VisitAction.CONTINUE;
+        }
+
+        @Override
+        protected VisitAction visitAction(Graph<String, String>.Vertex v) {
+            if (v.getLabel().equals(_stop)) {
+                return VisitAction.STOP;
+            }
+            _sentence += v.getLabel() + " ";
+            return VisitAction.CONTINUE;
+        }
+
+        /** Label of the vertex whose incoming edges are rejected. */
+        private String _reject;
+        /** Label of the vertex that halts the traversal. */
+        private String _stop;
+        /** Labels of visited vertices, in order. */
+        private String _sentence = "";
+    }
+
     private void setupStrings() {
         _possibleBreadths = new ArrayList<String>();
         _possibleDepths = new ArrayList<String>();
@@ -171,6 +208,92 @@ public class TraversalTest {
         _tester.depthFirstTraverse(_graph, _start);
     }
 
+    @Test
+    public void testVisitActions() {
+        setupGraph();
+        ActionTester rejecting = new ActionTester("am", null);
+        rejecting.depthFirstTraverse(_graph, _start);
+        assertEquals("I me? ", rejecting._sentence);
+        assertNull(rejecting.finalVertex());
+        ActionTester stopping = new ActionTester(null, "me?");
+        stopping.depthFirstTraverse(_graph, _start);
+        assertFalse(stopping._sentence.contains("me?"));
+        assertEquals("me?", stopping.finalVertex().getLabel());
+    }
+
+    @Test
+    public void testTraversalStats() {
+        setupGraph();
+        TraversalStats stats = new TraversalStats();
+        ActionTester full = new ActionTester(null, null);
+        full.setStats(stats);
+        full.depthFirstTraverse(_graph, _start);
+        assertEquals(8, stats.verticesVisited());
+        assertEquals(14, stats.edgesScanned());
+        assertEquals(0, stats.rejects());
+        ActionTester rejecting = new ActionTester("am", null);
+        rejecting.setStats(stats);
+        rejecting.depthFirstTraverse(_graph, _start);
+        assertEquals(2, stats.verticesVisited());
+        assertEquals(1, stats.rejects());
+        full.traverse(_graph, _start, Graph.<String>naturalOrder());
+        assertEquals(8, stats.verticesVisited());
+        assertEquals(3, stats.fringeHighWater());
+        assertSame(TraversalStats.NONE, new ActionTester(null, null).stats());
+    }
+
+    @Test
+    public void testOrderedTraversalVisitsOnce() {
+        UndirectedGraph<String, String> g =
+            new UndirectedGraph<String, String>();
+        ArrayList<Graph<String, String>.Vertex> verts =
+            new ArrayList<Graph<String, String>.Vertex>();
+        for (String label : new String[] { "a", "b", "c", "d", "e" }) {
+            verts.add(g.add(label));
+        }
+        for (Graph<String, String>.Vertex v : verts) {
+            for (Graph<String, String>.Vertex w : verts) {
+                g.add(v, w);
+            }
+        }
+        ActionTester ordered = new ActionTester(null, null);
+        ordered.traverse(g, verts.get(2), Graph.<String>naturalOrder());
+        assertEquals("c a b d e ", ordered._sentence);
+    }
+
+    /** Returns the labels delivered by ITER, separated by spaces. */
+    private String sentence(Iteration<Graph<String, String>.Vertex> iter) {
+        String result = "";
+        for (Graph<String, String>.Vertex v : iter) {
+            result += v.getLabel() + " ";
+        }
+        return result;
+    }
+
+    @Test
+    public void testLazyTraversals() {
+        setupStrings();
+        setupGraph();
+        assertTrue(_possibleBreadths.contains(
+            sentence(Traversals.breadthFirst(_graph, _start))));
+        assertTrue(_possibleDepths.contains(
+            sentence(Traversals.depthFirst(_graph, _start))));
+        String post = " " + sentence(Traversals.postOrder(_graph, _start));
+        assertTrue(post.endsWith(" I "));
+        assertTrue(post.indexOf(" graph ") < post.indexOf(" test "));
+        assertTrue(post.indexOf(" test ") < post.indexOf(" a "));
+        assertTrue(post.indexOf(" a ") < post.indexOf(" am "));
+        assertEquals("I am a feel me? test graph ya ",
+                     sentence(Traversals.ordered(_graph, _start,
+                                                 Graph.<String>naturalOrder())));
+        Iteration<Graph<String, String>.Vertex> first =
+            Traversals.breadthFirst(_graph, _start);
+        assertEquals("I", first.next().getLabel());
+        first.next();
+        first.next();
+        assertTrue(first.hasNext());
+    }
+
     /** list of possible results of a depth first traversal of _graph. */
     private ArrayList<String> _possibleBreadths;
     /** list of possible results of a breadth first traversal of _graph. */
@@ -0,0 +1,257 @@
+package graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+
+/** Lazy traversals of graphs.  Each method returns an Iteration that
+ *  delivers the vertices reachable from a starting vertex in the order of
+ *  a particular kind of traversal.  Unlike a Traversal, which walks the
+ *  whole reachable part of the graph in one call and reports to hooks, an
+ *  Iteration keeps its fringe to itself and does only the work needed to
+ *  produce each vertex as it is requested, so a client that stops after
+ *  the first k vertices pays only for those.  As for a Traversal, the
+ *  successors of a vertex v are the vertices at the other ends of
+ *  G.edges(v).  Changing the graph during an iteration has undefined
+ *  results.
+ *  @author Austin Gandy
+ */
+public final class Traversals {
+
+    /** Returns the vertices of G reachable from V in depth-first preorder:
+     *  each vertex is delivered when it is first reached. */
+    public static <VLabel, ELabel> Iteration<Graph<VLabel, ELabel>.Vertex>
+    depthFirst(Graph<VLabel, ELabel> G, Graph<VLabel, ELabel>.Vertex v) {
+        return new DepthFirstIteration<VLabel, ELabel>(G, v, false);
+    }
+
+    /** Returns the vertices of G reachable from V in depth-first
+     *  postorder: each vertex is delivered after all the vertices first
+     *  reached through it. */
+    public static <VLabel, ELabel> Iteration<Graph<VLabel, ELabel>.Vertex>
+    postOrder(Graph<VLabel, ELabel> G, Graph<VLabel, ELabel>.Vertex v) {
+        return new DepthFirstIteration<VLabel, ELabel>(G, v, true);
+    }
+
+    /** Returns the vertices of G reachable from V in breadth-first order,
+     *  that is, in nondecreasing order of the number of edges from V. */
+    public static <VLabel, ELabel> Iteration<Graph<VLabel, ELabel>.Vertex>
+    breadthFirst(Graph<VLabel, ELabel> G, Graph<VLabel, ELabel>.Vertex v) {
+        return new BreadthFirstIteration<VLabel, ELabel>(G, v);
+    }
+
+    /** Returns the vertices of G reachable from V, starting with V and
+     *  continuing each time with the least vertex, according to ORDER on
+     *  vertex labels, among the unvisited successors of the vertices
+     *  delivered so far.  This is the order of Traversal.traverse. */
+    public static <VLabel, ELabel> Iteration<Graph<VLabel, ELabel>.Vertex>
+    ordered(Graph<VLabel, ELabel> G, Graph<VLabel, ELabel>.Vertex v,
+            Comparator<? super VLabel> order) {
+        return new OrderedIteration<VLabel, ELabel>(G, v, order);
+    }
+
+    /** A depth-first traversal that delivers vertices in preorder or
+     *  postorder.  It keeps an explicit stack of the vertices on the
+     *  current path, each with an Iteration over its remaining edges. */
+    private static class DepthFirstIteration<VLabel, ELabel>
+        extends Iteration<Graph<VLabel, ELabel>.Vertex> {
+
+        /** A traversal of G from V, in postorder iff POSTORDER. */
+        DepthFirstIteration(Graph<VLabel, ELabel> G,
+                            Graph<VLabel, ELabel>.Vertex v,
+                            boolean postorder) {
+            _G = G;
+            _postorder = postorder;
+            _marked.add(v);
+            push(v);
+            if (!postorder) {
+                _next = v;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (_next == null) {
+                _next = advance();
+            }
+            return _next != null;
+        }
+
+        @Override
+        public Graph<VLabel, ELabel>.Vertex next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Graph<VLabel, ELabel>.Vertex result = _next;
+            _next = null;
+            return result;
+        }
+
+        /** Extends the traversal to the next vertex to be delivered and
+         *  returns it, or returns null if there is none. */
+        private Graph<VLabel, ELabel>.Vertex advance() {
+            while (!_path.isEmpty()) {
+                int top = _path.size() - 1;
+                Iteration<Graph<VLabel, ELabel>.Edge> edges = _edges.get(top);
+                if (edges.hasNext()) {
+                    Graph<VLabel, ELabel>.Vertex w =
+                        edges.next().getV(_path.get(top));
+                    if (_marked.add(w)) {
+                        push(w);
+                        if (!_postorder) {
+                            return w;
+                        }
+                    }
+                } else {
+                    _edges.remove(top);
+                    Graph<VLabel, ELabel>.Vertex v = _path.remove(top);
+                    if (_postorder) {
+                        return v;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /** Adds V to the end of the current path. */
+        private void push(Graph<VLabel, ELabel>.Vertex v) {
+            _path.add(v);
+            _edges.add(_G.edges(v));
+        }
+
+        /** The graph being traversed. */
+        private final Graph<VLabel, ELabel> _G;
+        /** True iff I deliver vertices in postorder. */
+        private final boolean _postorder;
+        /** The vertices on the current path from the start. */
+        private final ArrayList<Graph<VLabel, ELabel>.Vertex> _path =
+            new ArrayList<Graph<VLabel, ELabel>.Vertex>();
+        /** The unexplored edges of each vertex in _path. */
+        private final ArrayList<Iteration<Graph<VLabel, ELabel>.Edge>> _edges =
+            new ArrayList<Iteration<Graph<VLabel, ELabel>.Edge>>();
+        /** The vertices reached so far. */
+        private final HashSet<Graph<VLabel, ELabel>.Vertex> _marked =
+            new HashSet<Graph<VLabel, ELabel>.Vertex>();
+        /** The next vertex to deliver, or null if not yet computed. */
+        private Graph<VLabel, ELabel>.Vertex _next;
+    }
+
+    /** A breadth-first traversal.  The successors of a delivered vertex are
+     *  added to the queue only when the following vertex is requested. */
+    private static class BreadthFirstIteration<VLabel, ELabel>
+        extends Iteration<Graph<VLabel, ELabel>.Vertex> {
+
+        /** A traversal of G from V. */
+        BreadthFirstIteration(Graph<VLabel, ELabel> G,
+                              Graph<VLabel, ELabel>.Vertex v) {
+            _G = G;
+            _marked.add(v);
+            _queue.add(v);
+        }
+
+        @Override
+        public boolean hasNext() {
+            expandLast();
+            return !_queue.isEmpty();
+        }
+
+        @Override
+        public Graph<VLabel, ELabel>.Vertex next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            _last = _queue.poll();
+            return _last;
+        }
+
+        /** Adds the unmarked successors of the last vertex delivered, if
+         *  any, to the queue. */
+        private void expandLast() {
+            if (_last != null) {
+                for (Graph<VLabel, ELabel>.Edge e : _G.edges(_last)) {
+                    Graph<VLabel, ELabel>.Vertex w = e.getV(_last);
+                    if (_marked.add(w)) {
+                        _queue.add(w);
+                    }
+                }
+                _last = null;
+            }
+        }
+
+        /** The graph being traversed. */
+        private final Graph<VLabel, ELabel> _G;
+        /** Vertices reached but not yet delivered, in order. */
+        private final ArrayDeque<Graph<VLabel, ELabel>.Vertex> _queue =
+            new ArrayDeque<Graph<VLabel, ELabel>.Vertex>();
+        /** The vertices reached so far. */
+        private final HashSet<Graph<VLabel, ELabel>.Vertex> _marked =
+            new HashSet<Graph<VLabel, ELabel>.Vertex>();
+        /** The last vertex delivered, if its successors are not yet
+         *  queued. */
+        private Graph<VLabel, ELabel>.Vertex _last;
+    }
+
+    /** A traversal whose fringe is ordered by a Comparator on labels.  As
+     *  for BreadthFirstIteration, successors of a delivered vertex are
+     *  added to the fringe only when the following vertex is requested. */
+    private static class OrderedIteration<VLabel, ELabel>
+        extends Iteration<Graph<VLabel, ELabel>.Vertex> {
+
+        /** A traversal of G from V ordered by ORDER. */
+        OrderedIteration(Graph<VLabel, ELabel> G,
+                         Graph<VLabel, ELabel>.Vertex v,
+                         Comparator<? super VLabel> order) {
+            _G = G;
+            _fringe = new VertexFringe<VLabel, ELabel>(order);
+            _fringe.add(v);
+        }
+
+        @Override
+        public boolean hasNext() {
+            expandLast();
+            return !_fringe.isEmpty();
+        }
+
+        @Override
+        public Graph<VLabel, ELabel>.Vertex next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            _last = _fringe.poll();
+            _visited.add(_last);
+            return _last;
+        }
+
+        /** Adds the unvisited successors of the last vertex delivered, if
+         *  any, to the fringe. */
+        private void expandLast() {
+            if (_last != null) {
+                for (Graph<VLabel, ELabel>.Edge e : _G.edges(_last)) {
+                    Graph<VLabel, ELabel>.Vertex w = e.getV(_last);
+                    if (!_visited.contains(w)) {
+                        _fringe.add(w);
+                    }
+                }
+                _last = null;
+            }
+        }
+
+        /** The graph being traversed. */
+        private final Graph<VLabel, ELabel> _G;
+        /** Vertices reached but not yet delivered. */
+        private final VertexFringe<VLabel, ELabel> _fringe;
+        /** The vertices delivered so far. */
+        private final HashSet<Graph<VLabel, ELabel>.Vertex> _visited =
+            new HashSet<Graph<VLabel, ELabel>.Vertex>();
+        /** The last vertex delivered, if its successors are not yet in
+         *  the fringe. */
+        private Graph<VLabel, ELabel>.Vertex _last;
+    }
+
+    /** Not instantiable. */
+    private Traversals() {
+    }
+
+}
@@ -0,0 +1,135 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/** A priority queue of the vertices of a graph, ordered by a Comparator on
+ *  their labels and holding each vertex at most once.  The queue keeps
+ *  the position of each vertex in its heap, so that testing whether a
+ *  vertex is already present costs a single lookup, and keeps the label
+ *  of each queued vertex next to it, so that comparisons do not go back
+ *  through the vertices.  Used as the fringe of ordered traversals.
+ *  @author Austin Gandy
+ */
+class VertexFringe<VLabel, ELabel> {
+
+    /** An empty fringe ordered by ORDER on vertex labels. */
+    VertexFringe(Comparator<? super VLabel> order) {
+        _order = order;
+    }
+
+    /** Returns the number of vertices in me. */
+    int size() {
+        return _heap.size();
+    }
+
+    /** Returns true iff I am empty. */
+    boolean isEmpty() {
+        return _heap.isEmpty();
+    }
+
+    /** Returns true iff V is in me. */
+    boolean contains(Graph<VLabel, ELabel>.Vertex v) {
+        return _positions.containsKey(v);
+    }
+
+    /** Adds V to me, unless it is already present.  Returns true iff V was
+     *  added. */
+    boolean add(Graph<VLabel, ELabel>.Vertex v) {
+        if (_positions.containsKey(v)) {
+            return false;
+        }
+        _heap.add(v);
+        _labels.add(v.getLabel());
+        siftUp(_heap.size() - 1);
+        return true;
+    }
+
+    /** Removes and returns my least vertex, or returns null if I am
+     *  empty. */
+    Graph<VLabel, ELabel>.Vertex poll() {
+        if (_heap.isEmpty()) {
+            return null;
+        }
+        Graph<VLabel, ELabel>.Vertex result = _heap.get(0);
+        int last = _heap.size() - 1;
+        move(last, 0);
+        _heap.remove(last);
+        _labels.remove(last);
+        _positions.remove(result);
+        if (last > 0) {
+            siftDown(0);
+        }
+        return result;
+    }
+
+    /** Removes all vertices from me. */
+    void clear() {
+        _heap.clear();
+        _labels.clear();
+        _positions.clear();
+    }
+
+    /** Moves the vertex at heap position K up toward the root until it is
+     *  no less than its parent. */
+    private void siftUp(int k) {
+        Graph<VLabel, ELabel>.Vertex v = _heap.get(k);
+        VLabel label = _labels.get(k);
+        while (k > 0) {
+            int parent = (k - 1) / 2;
+            if (_order.compare(label, _labels.get(parent)) >= 0) {
+                break;
+            }
+            move(parent, k);
+            k = parent;
+        }
+        place(v, label, k);
+    }
+
+    /** Moves the vertex at heap position K down toward the leaves until it
+     *  is no greater than its children. */
+    private void siftDown(int k) {
+        Graph<VLabel, ELabel>.Vertex v = _heap.get(k);
+        VLabel label = _labels.get(k);
+        int n = _heap.size();
+        while (2 * k + 1 < n) {
+            int child = 2 * k + 1;
+            if (child + 1 < n
+                && _order.compare(_labels.get(child + 1),
+                                  _labels.get(child)) < 0) {
+                child += 1;
+            }
+            if (_order.compare(_labels.get(child), label) >= 0) {
+                break;
+            }
+            move(child, k);
+            k = child;
+        }
+        place(v, label, k);
+    }
+
+    /** Copies the vertex at heap position FROM to position TO. */
+    private void move(int from, int to) {
+        place(_heap.get(from), _labels.get(from), to);
+    }
+
+    /** Stores V, whose label is LABEL, at heap position K. */
+    private void place(Graph<VLabel, ELabel>.Vertex v, VLabel label, int k) {
+        _heap.set(k, v);
+        _labels.set(k, label);
+        _positions.put(v, k);
+    }
+
+    /** The ordering on labels. */
+    private final Comparator<? super VLabel> _order;
+    /** The heap of vertices. */
+    private final ArrayList<Graph<VLabel, ELabel>.Vertex> _heap =
+        new ArrayList<Graph<VLabel, ELabel>.Vertex>();
+    /** The labels of the vertices in _heap, at the same positions. */
+    private final ArrayList<VLabel> _labels = new ArrayList<VLabel>();
+    /** The position in _heap of each vertex in me. */
+    private final HashMap<Graph<VLabel, ELabel>.Vertex, Integer> _positions =
+        new HashMap<Graph<VLabel, ELabel>.Vertex, Integer>();
+
+}
@@ -0,0 +1,20 @@
+package graph;
+
+/** The result of one of the action-returning hooks of a Traversal
+ *  (preVisitAction, visitAction, and postVisitAction).  These play the
+ *  same roles as returning normally from, or throwing RejectException or
+ *  StopException out of, the corresponding preVisit, visit, and postVisit
+ *  hooks, but do not require creating or throwing an exception.
+ *  @author Austin Gandy
+ */
+public enum VisitAction {
+
+    /** Proceed with the traversal normally. */
+    CONTINUE,
+    /** Do not traverse the edge (from preVisitAction) or the successors of
+     *  the vertex (from visitAction).  Ignored from postVisitAction. */
+    REJECT,
+    /** Halt the traversal. */
+    STOP;
+
+}
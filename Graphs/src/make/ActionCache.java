@@ -0,0 +1,210 @@
+package make;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A record of the results of earlier rebuilds, used to skip rebuilds
+ *  whose inputs have not changed in content, whatever their change dates.
+ *
+ *  Each rebuild is described by a key: the SHA-256 digest of the target's
+ *  commands and of the names and content digests of its prerequisites.
+ *  The cache maps each key to the content digest of the target as its
+ *  commands left it.  A target whose key is in the cache, and whose
+ *  current content has the recorded digest, need not be rebuilt.
+ *
+ *  The cache holds at most a fixed number of entries, discarding the
+ *  least recently used when full.  It is kept in a file with one entry
+ *  per line, each a key and a digest, from least to most recently used.
+ *  A missing or malformed file simply provides no entries.  All methods
+ *  that use the entries are synchronized, so that jobs running in
+ *  parallel may share a cache.
+ *  @author Austin Gandy
+ */
+class ActionCache {
+
+    /** The digest that stands for the contents of a missing file. */
+    static final String MISSING = "-";
+
+    /** An empty cache that holds at most CAPACITY entries. */
+    ActionCache(final int capacity) {
+        _entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> e) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Returns the cache kept in FILE, holding at most CAPACITY
+     *  entries, or an empty cache if FILE does not exist or cannot be
+     *  read. */
+    static ActionCache read(File file, int capacity) {
+        ActionCache result = new ActionCache(capacity);
+        BufferedReader in;
+        try {
+            in = new BufferedReader(new FileReader(file));
+        } catch (FileNotFoundException e) {
+            return result;
+        }
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length == 2) {
+                    result._entries.put(fields[0], fields[1]);
+                }
+            }
+        } catch (IOException e) {
+            /* Keep what was read. */
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                /* Ignore. */
+            }
+        }
+        return result;
+    }
+
+    /** Write my entries to FILE, replacing its contents. */
+    synchronized void write(File file) throws IOException {
+        PrintWriter out = new PrintWriter(file);
+        try {
+            for (Map.Entry<String, String> entry : _entries.entrySet()) {
+                out.printf("%s %s%n", entry.getKey(), entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("could not write " + file);
+        }
+    }
+
+    /** Returns the digest recorded for KEY, or null if there is none. */
+    synchronized String get(String key) {
+        String result = _entries.get(key);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Record that the rebuild described by KEY produced contents whose
+     *  digest is DIGEST. */
+    synchronized void put(String key, String digest) {
+        _entries.put(key, digest);
+    }
+
+    /** Returns the number of entries. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Returns the number of calls to get that found an entry. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of calls to get that found no entry. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Returns the key describing a rebuild by COMMANDS from the files
+     *  named PREREQS, whose content digests are DIGESTS. */
+    static String key(List<String> commands, List<String> prereqs,
+                      List<String> digests) {
+        MessageDigest sha = sha256();
+        for (String command : commands) {
+            update(sha, "c", command);
+        }
+        for (int i = 0; i < prereqs.size(); i += 1) {
+            update(sha, "p", prereqs.get(i));
+            update(sha, "d", digests.get(i));
+        }
+        return hex(sha.digest());
+    }
+
+    /** Returns the content digest of FILE, or MISSING if it does not
+     *  exist or cannot be read. */
+    static String digest(File file) {
+        MessageDigest sha = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return MISSING;
+        }
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                sha.update(buffer, 0, n);
+            }
+            return hex(sha.digest());
+        } catch (IOException e) {
+            return MISSING;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                /* Ignore. */
+            }
+        }
+    }
+
+    /** Add the field TEXT, tagged with TAG, to SHA, in a form that cannot
+     *  be confused with any other sequence of fields. */
+    private static void update(MessageDigest sha, String tag, String text) {
+        byte[] bytes = text.getBytes(UTF8);
+        sha.update(tag.getBytes(UTF8));
+        sha.update(Integer.toString(bytes.length).getBytes(UTF8));
+        sha.update((byte) ':');
+        sha.update(bytes);
+    }
+
+    /** Returns a new SHA-256 digest. */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns BYTES in hexadecimal. */
+    private static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** Encoding of strings in keys. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Size of the buffer for reading files. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Maps keys to digests, in order of use. */
+    private final LinkedHashMap<String, String> _entries;
+    /** Number of successful and unsuccessful lookups. */
+    private long _hits, _misses;
+
+}
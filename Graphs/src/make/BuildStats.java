@@ -0,0 +1,115 @@
+package make;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Historical durations of the commands that rebuild targets, used to
+ *  estimate how long each target will take.  The durations are kept in a
+ *  stats file, one line per target, each holding the target's name and
+ *  its estimated duration in milliseconds.  Each newly measured duration
+ *  is averaged with the previous estimate, so that estimates follow
+ *  changes in the commands without jumping on a single slow run.
+ *
+ *  The stats file is only an aid to scheduling, so a missing or
+ *  malformed file simply provides no estimates.
+ *  @author Austin Gandy
+ */
+class BuildStats {
+
+    /** An empty set of estimates. */
+    BuildStats() {
+        _millis = new TreeMap<String, Long>();
+    }
+
+    /** Returns the estimates in the stats file FILE, or no estimates if
+     *  FILE does not exist or cannot be read. */
+    static BuildStats read(File file) {
+        BuildStats result = new BuildStats();
+        BufferedReader in;
+        try {
+            in = new BufferedReader(new FileReader(file));
+        } catch (FileNotFoundException e) {
+            return result;
+        }
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 2) {
+                    try {
+                        result._millis.put(fields[0],
+                                           Long.parseLong(fields[1]));
+                    } catch (NumberFormatException e) {
+                        /* Ignore the line. */
+                    }
+                }
+            }
+        } catch (IOException e) {
+            /* Keep what was read. */
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                /* Ignore. */
+            }
+        }
+        return result;
+    }
+
+    /** Write my estimates to the stats file FILE, replacing its
+     *  contents. */
+    void write(File file) throws IOException {
+        PrintWriter out = new PrintWriter(file);
+        try {
+            for (Map.Entry<String, Long> entry : _millis.entrySet()) {
+                out.printf("%s %d%n", entry.getKey(), entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("could not write " + file);
+        }
+    }
+
+    /** Returns the estimated duration of rebuilding the target named NAME,
+     *  in milliseconds.  For a target with no history, this is the mean
+     *  of the other estimates, or 1 if there are none. */
+    long estimate(String name) {
+        Long millis = _millis.get(name);
+        if (millis != null) {
+            return millis;
+        }
+        if (_millis.isEmpty()) {
+            return 1;
+        }
+        if (_mean < 0) {
+            long total = 0;
+            for (long m : _millis.values()) {
+                total += m;
+            }
+            _mean = total / _millis.size();
+        }
+        return _mean;
+    }
+
+    /** Record that rebuilding the target named NAME took MILLIS
+     *  milliseconds. */
+    void record(String name, long millis) {
+        Long old = _millis.get(name);
+        _millis.put(name, old == null ? millis : (old + millis) / 2);
+        _mean = -1;
+    }
+
+    /** Maps target names to estimated durations in milliseconds. */
+    private final TreeMap<String, Long> _millis;
+    /** Mean of the values in _millis, or -1 if not yet computed. */
+    private long _mean = -1;
+
+}
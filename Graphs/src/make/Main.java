@@ -2,11 +2,10 @@ package make;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
 
 /** Initial class for the 'make' program.
  *  @author Austin Gandy
@@ -15,7 +14,24 @@ public final class Main {
 
     /** Entry point for the CS61B make program.  ARGS may contain options
      *  and targets:
-     *      [ -f MAKEFILE ] [ -D FILEINFO ] TARGET1 TARGET2 ...
+     *      [ -f MAKEFILE ] [ -D FILEINFO ] [ -j JOBS ] [ -k ] [ -c CACHE ]
+     *      [ -S STATE ] [ -w ] TARGET1 TARGET2 ...
+     *  Without -j, make prints the commands that would rebuild the
+     *  targets.  With -j, it runs them, rebuilding up to JOBS targets at
+     *  once, starting first those with the longest estimated chains of
+     *  work after them (estimated from the durations of earlier runs,
+     *  which are kept in the file .makestats).  After a failed command,
+     *  it stops unless -k is given, in which case it goes on rebuilding
+     *  the targets that do not depend on the failed one.  With -c (and
+     *  -j), make keeps an action cache in the file CACHE, and does not
+     *  rerun the commands of a target whose commands, prerequisites'
+     *  contents, and own contents are as they were after an earlier
+     *  run.  With -S, make saves what it reads from MAKEFILE and FILEINFO
+     *  in the binary file STATE, and later runs read STATE instead as
+     *  long as neither text file has changed.  With -w, make
+     *  does not exit, but watches MAKEFILE and FILEINFO and repeats the
+     *  procedure whenever they change, using STATE, if given, whenever
+     *  it reads MAKEFILE again.
      */
     public static void main(String... args) {
         String makefileName;
@@ -27,6 +43,11 @@ public final class Main {
 
         makefileName = "Makefile";
         fileInfoName = "fileinfo";
+        int jobs = 0;
+        boolean keepGoing = false;
+        boolean watch = false;
+        String cacheName = null;
+        String stateName = null;
 
         int a;
         for (a = 0; a < args.length; a += 1) {
@@ -44,6 +65,31 @@ public final class Main {
                 } else {
                     fileInfoName = args[a];
                 }
+            } else if (args[a].equals("-j")) {
+                a += 1;
+                if (a == args.length) {
+                    usage();
+                } else {
+                    jobs = parseJobs(args[a]);
+                }
+            } else if (args[a].equals("-k")) {
+                keepGoing = true;
+            } else if (args[a].equals("-c")) {
+                a += 1;
+                if (a == args.length) {
+                    usage();
+                } else {
+                    cacheName = args[a];
+                }
+            } else if (args[a].equals("-S")) {
+                a += 1;
+                if (a == args.length) {
+                    usage();
+                } else {
+                    stateName = args[a];
+                }
+            } else if (args[a].equals("-w")) {
+                watch = true;
             } else if (args[a].startsWith("-")) {
                 usage();
             } else {
@@ -56,127 +102,146 @@ public final class Main {
             targets.add(args[a]);
         }
 
-        make(makefileName, fileInfoName, targets);
+        if (watch) {
+            try {
+                new Watcher(makefileName, fileInfoName, stateName, targets,
+                            jobs, keepGoing, cacheName).run();
+            } catch (IOException e) {
+                error("cannot watch files: %s", e.getMessage());
+            }
+        } else {
+            make(makefileName, fileInfoName, stateName, targets, jobs,
+                 keepGoing, cacheName);
+        }
+    }
+
+    /** Returns the number of jobs given by the argument of -j, TEXT. */
+    private static int parseJobs(String text) {
+        try {
+            int jobs = Integer.parseInt(text);
+            if (jobs > 0) {
+                return jobs;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through to usage. */
+        }
+        usage();
+        return 0;
     }
 
     /** Carry out the make procedure using MAKEFILENAME as the makefile,
      *  taking information on the current file-system state from FILEINFONAME,
      *  and building TARGETS, or the first target in the makefile if TARGETS
-     *  is empty.
+     *  is empty.  If STATENAME is not null, it names a state file that
+     *  caches the contents of the other two.  If JOBS is positive, run the
+     *  commands, rebuilding up to JOBS targets at once, continuing after
+     *  failures iff KEEPGOING, and using the action cache in the file
+     *  named CACHENAME, if not null; otherwise, just print them.
      *  */
     private static void make(String makefileName, String fileInfoName,
-                             List<String> targets) {
+                             String stateName, List<String> targets,
+                             int jobs, boolean keepGoing, String cacheName) {
         try {
-            _currentTime = (int) -System.currentTimeMillis();
-            HashMap<String, HashSet<String>> dependencies =
-                    new HashMap<String, HashSet<String>>();
-            HashMap<String, Integer> ages =
-                    new HashMap<String, Integer>();
-            Scanner fileInfo = new Scanner(new File(fileInfoName));
-            String nextLine;
-            HashSet<String> fileInfoNames = new HashSet<String>();
-            HashMap<String, String> commands = new HashMap<String, String>();
-            if (fileInfo.hasNextLine()) {
-                nextLine = fileInfo.nextLine();
-                nextLine.replace("\\s+", "");
-            } else {
-                usage();
-            }
-            while (fileInfo.hasNextLine()) {
-                nextLine = fileInfo.nextLine();
-                String[] info = nextLine.split("\\s+");
-                ages.put(info[0], Integer.parseInt(info[1]));
-                fileInfoNames.add(info[0]);
-            }
-            fileInfo.close();
-            File scannerFile = new File(makefileName);
-            Scanner makeFile = new Scanner(scannerFile);
-            HashSet<String> dependentOn = new HashSet<String>();
-            while (makeFile.hasNextLine()) {
-                String line = makeFile.nextLine();
-                if (!line.matches("^\\s$") && !line.startsWith("#")
-                        && !line.equals("")) {
-                    String[] currentLine = line.split("\\s+");
-                    currentLine[0] = currentLine[0].replace(":", "");
-                    if (dependencies.containsKey(currentLine[0])) {
-                        dependentOn = dependencies.get(currentLine[0]);
-                    }
-                    fileInfoNames.add(currentLine[0]);
-                    for (int i = 1; i < currentLine.length; i += 1) {
-                        dependentOn.add(currentLine[i]);
-                        fileInfoNames.add(currentLine[i]);
-                    }
-                    if (makeFile.hasNextLine()) {
-                        dependencies.put(currentLine[0], dependentOn);
-                        commands.put(currentLine[0], makeFile.nextLine());
-                        dependentOn = new HashSet<String>();
-                    } else {
-                        usage();
-                    }
+            Makefile makefile = read(makefileName, fileInfoName, stateName);
+            if (targets.isEmpty()) {
+                if (makefile.getFirstTarget() == null) {
+                    usage();
                 }
+                targets = Arrays.asList(makefile.getFirstTarget());
             }
-            for (String target : targets) {
-                assemble(target, target, dependencies, fileInfoNames, ages,
-                        commands);
+            if (!build(makefile, makefile.rebuild(targets), jobs,
+                       keepGoing, cacheName)) {
+                System.exit(1);
             }
-            makeFile.close();
-        } catch (FileNotFoundException | NumberFormatException
-                | IndexOutOfBoundsException e) {
+        } catch (FileNotFoundException e) {
+            usage();
+        } catch (MakeException e) {
+            System.err.printf("make: %s%n", e.getMessage());
             usage();
         }
     }
 
-    /** Creates the graph associated with the dependence file. Takes in a TARGET
-     *  INITIALTARGET, DEPENDENCIES, FILEINFONAMES, NAMEDATE, and COMMANDS. */
-    private static void assemble(String target, String initialTarget,
-            HashMap<String, HashSet<String>> dependencies,
-            HashSet<String> fileInfoNames,
-            HashMap<String, Integer> nameDate,
-            HashMap<String, String> commands) {
-        if (target != null && !fileInfoNames.contains(target)) {
-            usage();
+    /** Returns the Makefile read from the makefile MAKEFILENAME and the
+     *  fileinfo file FILEINFONAME, using the state file STATENAME, if not
+     *  null, in place of both if it is up to date, and saving them in it
+     *  otherwise. */
+    static Makefile read(String makefileName, String fileInfoName,
+                         String stateName)
+        throws FileNotFoundException {
+        if (stateName == null) {
+            return Makefile.read(makefileName, fileInfoName);
         }
-        HashSet<String> prereqs = dependencies.get(target);
-        if (prereqs != null) {
-            for (String prereq : prereqs) {
-                boolean made = false;
-                for (String built : _built) {
-                    if (built.equals(prereqs)) {
-                        made = true;
-                    }
-                }
-                if (prereq.equals(initialTarget)) {
-                    usage();
-                } else if ((!made || _first) && (nameDate.get(prereq) == null
-                        || (nameDate.get(prereq) != null
-                        && nameDate.get(target) != null
-                        && nameDate.get(target) > nameDate.get(prereq)))) {
-                    _built.add(prereq);
-                    nameDate.put(prereq, _currentTime);
-                    _currentTime += 1;
-                    assemble(prereq, initialTarget, dependencies,
-                            fileInfoNames, nameDate, commands);
-                } else {
-                    continue;
+        File state = new File(stateName);
+        File makefile = new File(makefileName);
+        File fileInfo = new File(fileInfoName);
+        Makefile result = StateStore.read(state, makefile, fileInfo);
+        if (result == null) {
+            result = Makefile.read(makefileName, fileInfoName);
+            try {
+                StateStore.write(state, result, makefile, fileInfo);
+            } catch (IOException e) {
+                System.err.printf("make: %s%n", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** Rebuild the targets STALE from MAKEFILE, which must be the result
+     *  of MAKEFILE.rebuild or MAKEFILE.outOfDate.  If JOBS is positive, run
+     *  the commands, rebuilding up to JOBS targets at once, continuing
+     *  after failures iff KEEPGOING, and using the action cache in the
+     *  file named CACHENAME, if not null; otherwise, just print them.
+     *  Returns false iff a command failed. */
+    static boolean build(Makefile makefile, List<Target> stale, int jobs,
+                         boolean keepGoing, String cacheName) {
+        if (jobs == 0) {
+            for (Target target : stale) {
+                for (String command : target.getCommands()) {
+                    System.out.println(command);
                 }
-                _first = false;
             }
-            System.out.println(commands.get(target));
+            return true;
+        }
+        File statsFile = new File(STATS_FILE);
+        BuildStats stats = BuildStats.read(statsFile);
+        Scheduler scheduler =
+            new Scheduler(makefile, stale, jobs, keepGoing, stats,
+                          System.out);
+        ActionCache cache = null;
+        if (cacheName != null) {
+            cache = ActionCache.read(new File(cacheName), CACHE_CAPACITY);
+            scheduler.setCache(cache);
+        }
+        boolean ok = scheduler.run();
+        try {
+            stats.write(statsFile);
+            if (cache != null) {
+                cache.write(new File(cacheName));
+                System.err.printf("make: %d of %d targets found in cache%n",
+                                  cache.hits(), stale.size());
+            }
+        } catch (IOException e) {
+            System.err.printf("make: %s%n", e.getMessage());
         }
+        return ok;
     }
 
+    /** Name of the file of target durations from earlier runs. */
+    private static final String STATS_FILE = ".makestats";
+
+    /** Maximum number of entries in the action cache. */
+    private static final int CACHE_CAPACITY = 100000;
+
     /** Print a brief usage message and exit program abnormally. */
     private static void usage() {
         System.out.println("Something went wrong. I give up. Sorry.");
         System.exit(1);
     }
 
-    /** first call to make. */
-    private static boolean _first = true;
-
-    /** ArrayList used to keep track of what has been built. */
-    private static ArrayList<String> _built = new ArrayList<String>();
-
-    /** int of current time. used to assign higher times to updated files. */
-    private static int _currentTime;
+    /** Print an error message formed from FORMAT and ARGS as for
+     *  String.format, and exit program abnormally. */
+    private static void error(String format, Object... args) {
+        System.err.printf("make: " + format + "%n", args);
+        System.exit(1);
+    }
 }
@@ -0,0 +1,15 @@
+package make;
+
+/** An unchecked exception that reports an error in a makefile, a fileinfo
+ *  file, or a request to make.
+ *  @author Austin Gandy
+ */
+class MakeException extends RuntimeException {
+
+    /** A MakeException whose message is formed from FORMAT and ARGS as
+     *  for String.format. */
+    MakeException(String format, Object... args) {
+        super(String.format(format, args));
+    }
+
+}
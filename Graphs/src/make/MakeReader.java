@@ -0,0 +1,216 @@
+package make;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/** A reader of the lines of a makefile or fileinfo file, which tokenizes
+ *  each line in place.  The file is read through a fixed ByteBuffer, and
+ *  each line is copied once into a reusable array of bytes, so that
+ *  reading a file takes time proportional to its size and creates no
+ *  objects per line except those the caller asks for (the text of a line,
+ *  or a new name in a NameTable).  Blanks are the characters that
+ *  String.trim removes: those no greater than ' '.
+ *  @author Austin Gandy
+ */
+class MakeReader implements Closeable {
+
+    /** A reader of the file FILE. */
+    MakeReader(File file) throws FileNotFoundException {
+        _file = file;
+        _channel = new FileInputStream(file).getChannel();
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        _buffer.flip();
+        _line = new byte[INITIAL_LINE];
+    }
+
+    /** Read the next line, without its terminator.  Returns false if
+     *  there is none. */
+    boolean readLine() {
+        _length = 0;
+        boolean found = false;
+        while (_buffer.hasRemaining() || fill()) {
+            found = true;
+            byte[] buf = _buffer.array();
+            int start = _buffer.position(), limit = _buffer.limit();
+            int end;
+            for (end = start; end < limit && buf[end] != '\n'; end += 1) {
+                continue;
+            }
+            append(buf, start, end);
+            if (end < limit) {
+                _buffer.position(end + 1);
+                break;
+            }
+            _buffer.position(limit);
+        }
+        if (_length > 0 && _line[_length - 1] == '\r') {
+            _length -= 1;
+        }
+        return found;
+    }
+
+    /** Returns the length of the current line. */
+    int length() {
+        return _length;
+    }
+
+    /** Returns character #K of the current line. */
+    int at(int k) {
+        return _line[k];
+    }
+
+    /** Returns true iff C is a blank. */
+    static boolean isBlank(int c) {
+        return c >= 0 && c <= ' ';
+    }
+
+    /** Returns the position of the first non-blank at or after position
+     *  K of the current line, or its length if there is none. */
+    int skipBlanks(int k) {
+        while (k < _length && isBlank(_line[k])) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Returns the position of the first blank, or STOP, at or after
+     *  position K of the current line, or its length if there is none.
+     *  STOP is -1 for none. */
+    int tokenEnd(int k, int stop) {
+        while (k < _length && !isBlank(_line[k]) && _line[k] != stop) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Returns the position of the first character C at or after position
+     *  K of the current line, or -1 if there is none. */
+    int indexOf(int c, int k) {
+        for (; k < _length; k += 1) {
+            if (_line[k] == c) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the id in NAMES of the name at positions START .. END-1 of
+     *  the current line. */
+    int intern(NameTable names, int start, int end) {
+        return names.intern(_line, start, end);
+    }
+
+    /** Returns the change date at positions START .. END-1 of the current
+     *  line, a decimal integer, possibly signed.  Throws a MakeException if
+     *  it is not a valid int. */
+    int parseTime(int start, int end) {
+        boolean negative = start < end && _line[start] == '-';
+        int k = start;
+        if (k < end && (_line[k] == '-' || _line[k] == '+')) {
+            k += 1;
+        }
+        if (k == end) {
+            throw badTime(start, end);
+        }
+        long value = 0;
+        for (; k < end; k += 1) {
+            int digit = _line[k] - '0';
+            if (digit < 0 || digit > 9) {
+                throw badTime(start, end);
+            }
+            value = 10 * value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw badTime(start, end);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw badTime(start, end);
+        }
+        return (int) value;
+    }
+
+    /** Returns the text of the current line. */
+    String text() {
+        return text(0, _length);
+    }
+
+    /** Returns the text at positions START .. END-1 of the current
+     *  line. */
+    String text(int start, int end) {
+        return new String(_line, start, end - start, UTF8);
+    }
+
+    /** Returns the file I read. */
+    File getFile() {
+        return _file;
+    }
+
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException e) {
+            /* Ignore. */
+        }
+    }
+
+    /** Returns an exception reporting a bad time at positions START ..
+     *  END-1. */
+    private MakeException badTime(int start, int end) {
+        return new MakeException("%s: bad time: %s", _file, text(start, end));
+    }
+
+    /** Refill _buffer from the file.  Returns false at the end of the
+     *  file. */
+    private boolean fill() {
+        _buffer.clear();
+        try {
+            int n;
+            do {
+                n = _channel.read(_buffer);
+            } while (n == 0);
+            _buffer.flip();
+            return n > 0;
+        } catch (IOException e) {
+            throw new MakeException("%s: %s", _file, e.getMessage());
+        }
+    }
+
+    /** Append BUF[START .. END-1] to the current line. */
+    private void append(byte[] buf, int start, int end) {
+        int n = end - start;
+        if (_length + n > _line.length) {
+            _line = Arrays.copyOf(_line, Math.max(2 * _line.length,
+                                                  _length + n));
+        }
+        System.arraycopy(buf, start, _line, _length, n);
+        _length += n;
+    }
+
+    /** Encoding of files. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Initial capacity of the line buffer. */
+    private static final int INITIAL_LINE = 256;
+
+    /** The file I read. */
+    private final File _file;
+    /** The open file. */
+    private final FileChannel _channel;
+    /** Input not yet consumed lies between its position and limit. */
+    private final ByteBuffer _buffer;
+    /** The current line in _line[0 .. _length-1]. */
+    private byte[] _line;
+    /** Length of the current line. */
+    private int _length;
+
+}
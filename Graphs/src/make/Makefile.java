@@ -0,0 +1,475 @@
+package make;
+
+import graph.DirectedGraph;
+import graph.Graph;
+import graph.Graphs;
+import graph.Iteration;
+import graph.NoLabel;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/** The dependency graph described by a makefile, together with the change
+ *  dates of files described by a fileinfo file.  Each file named in
+ *  either is a vertex labeled with its Target, and there is an edge from
+ *  each target to each of its prerequisites, in the order in which they
+ *  appear in the makefile.
+ *  @author Austin Gandy
+ */
+class Makefile {
+
+    /** An empty Makefile whose current time is 0. */
+    Makefile() {
+        _graph = new DirectedGraph<Target, NoLabel>();
+        _names = new NameTable();
+        _vertices = new ArrayList<Graph<Target, NoLabel>.Vertex>();
+    }
+
+    /** Returns the Makefile described by the makefile named MAKEFILENAME
+     *  and the fileinfo file named FILEINFONAME. */
+    static Makefile read(String makefileName, String fileInfoName)
+        throws FileNotFoundException {
+        Makefile result = new Makefile();
+        result.readFileInfo(new File(fileInfoName));
+        result.readRules(new File(makefileName));
+        result.checkCycles();
+        return result;
+    }
+
+    /** Throw a MakeException listing the files in each dependency cycle,
+     *  if there are any.  A cycle is a strongly connected component of
+     *  the dependency graph with more than one file, or a file that is
+     *  its own prerequisite. */
+    void checkCycles() {
+        ArrayList<String> cycles = new ArrayList<String>();
+        for (List<Graph<Target, NoLabel>.Vertex> component
+                 : Graphs.stronglyConnectedComponents(_graph)) {
+            Graph<Target, NoLabel>.Vertex v = component.get(0);
+            if (component.size() == 1 && !isPrerequisite(v, v)) {
+                continue;
+            }
+            ArrayList<String> names = new ArrayList<String>();
+            for (Graph<Target, NoLabel>.Vertex w : component) {
+                names.add(w.getLabel().getName());
+            }
+            Collections.sort(names);
+            cycles.add(join(names, ", "));
+        }
+        if (!cycles.isEmpty()) {
+            Collections.sort(cycles);
+            throw new MakeException("circular dependency among %s",
+                                    join(cycles, "; among "));
+        }
+    }
+
+    /** Returns true iff the file at P is a prerequisite of the file at
+     *  V. */
+    private boolean isPrerequisite(Graph<Target, NoLabel>.Vertex p,
+                                   Graph<Target, NoLabel>.Vertex v) {
+        for (Graph<Target, NoLabel>.Vertex w : _graph.successors(v)) {
+            if (w == p) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the elements of STRINGS separated by SEPARATOR. */
+    private static String join(List<String> strings, String separator) {
+        StringBuilder result = new StringBuilder();
+        for (String s : strings) {
+            if (result.length() > 0) {
+                result.append(separator);
+            }
+            result.append(s);
+        }
+        return result.toString();
+    }
+
+    /** Read the current time and the change dates of files from the
+     *  fileinfo file FILE. */
+    void readFileInfo(File file) throws FileNotFoundException {
+        FileInfo info = parseFileInfo(file);
+        _currentTime = info.time;
+        for (int i = 0; i < info.size; i += 1) {
+            vertex(info.ids[i]).getLabel().setFileAge(true, info.ages[i]);
+        }
+    }
+
+    /** Read the current time and the change dates of files from the
+     *  fileinfo file FILE, replacing those read previously, and forget
+     *  the decisions of earlier calls to rebuild that depended on the
+     *  dates that changed: those about the files whose dates changed, and
+     *  about everything that depends on them.  If the current time
+     *  changed, forget all decisions.  Returns the number of targets whose
+     *  decisions were forgotten. */
+    int updateFileInfo(File file) throws FileNotFoundException {
+        FileInfo info = parseFileInfo(file);
+        int n = _names.size();
+        boolean[] listed = new boolean[n];
+        int[] ages = new int[n];
+        for (int i = 0; i < info.size; i += 1) {
+            listed[info.ids[i]] = true;
+            ages[info.ids[i]] = info.ages[i];
+        }
+        ArrayList<Graph<Target, NoLabel>.Vertex> changed =
+            new ArrayList<Graph<Target, NoLabel>.Vertex>();
+        for (int id = 0; id < n; id += 1) {
+            Graph<Target, NoLabel>.Vertex v = vertex(id);
+            Target target = v.getLabel();
+            if (listed[id] != target.hasFileAge()
+                || listed[id] && ages[id] != target.getFileAge()) {
+                target.setFileAge(listed[id], ages[id]);
+                changed.add(v);
+            }
+        }
+        if (info.time != _currentTime) {
+            _currentTime = info.time;
+            for (Graph<Target, NoLabel>.Vertex v : _vertices) {
+                v.getLabel().reset();
+            }
+            return _vertices.size();
+        }
+        return invalidate(changed);
+    }
+
+    /** Forget the decisions about the targets at CHANGED and about all
+     *  targets that depend on them, directly or indirectly.  Returns the
+     *  number of targets affected. */
+    private int invalidate(List<Graph<Target, NoLabel>.Vertex> changed) {
+        HashSet<Graph<Target, NoLabel>.Vertex> cone =
+            new HashSet<Graph<Target, NoLabel>.Vertex>(changed);
+        ArrayList<Graph<Target, NoLabel>.Vertex> work =
+            new ArrayList<Graph<Target, NoLabel>.Vertex>(changed);
+        while (!work.isEmpty()) {
+            Graph<Target, NoLabel>.Vertex v = work.remove(work.size() - 1);
+            v.getLabel().reset();
+            for (Graph<Target, NoLabel>.Vertex p : _graph.predecessors(v)) {
+                /* A target that has not been examined has no examined
+                 * dependents, so there is nothing to forget beyond it. */
+                if (p.getLabel().isExamined() && cone.add(p)) {
+                    work.add(p);
+                }
+            }
+        }
+        return cone.size();
+    }
+
+    /** The contents of a fileinfo file. */
+    private static class FileInfo {
+        /** The current time. */
+        private int time;
+        /** The number of files listed. */
+        private int size;
+        /** Ids of the files listed, in ids[0 .. size-1]. */
+        private int[] ids = new int[INITIAL_FILES];
+        /** Change dates of the files listed, parallel to ids. */
+        private int[] ages = new int[INITIAL_FILES];
+
+        /** Add the file whose id is ID with change date AGE. */
+        void add(int id, int age) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * size);
+                ages = Arrays.copyOf(ages, 2 * size);
+            }
+            ids[size] = id;
+            ages[size] = age;
+            size += 1;
+        }
+    }
+
+    /** Returns the contents of the fileinfo file FILE.  The names of files
+     *  it lists are added to _names. */
+    private FileInfo parseFileInfo(File file) throws FileNotFoundException {
+        MakeReader in = new MakeReader(file);
+        try {
+            if (!in.readLine()) {
+                throw new MakeException("%s: missing current time", file);
+            }
+            FileInfo result = new FileInfo();
+            int start = in.skipBlanks(0);
+            int end = in.length();
+            while (end > start && MakeReader.isBlank(in.at(end - 1))) {
+                end -= 1;
+            }
+            result.time = in.parseTime(start, end);
+            while (in.readLine()) {
+                int nameStart = in.skipBlanks(0);
+                if (nameStart == in.length()) {
+                    continue;
+                }
+                int nameEnd = in.tokenEnd(nameStart, -1);
+                int ageStart = in.skipBlanks(nameEnd);
+                int ageEnd = in.tokenEnd(ageStart, -1);
+                if (ageStart == ageEnd
+                    || in.skipBlanks(ageEnd) != in.length()) {
+                    throw new MakeException("%s: bad line: %s", file,
+                                            in.text().trim());
+                }
+                int age = in.parseTime(ageStart, ageEnd);
+                result.add(in.intern(_names, nameStart, nameEnd), age);
+            }
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Read the rules in the makefile FILE. */
+    void readRules(File file) throws FileNotFoundException {
+        MakeReader in = new MakeReader(file);
+        try {
+            Target current = null;
+            boolean commandsAllowed = false;
+            while (in.readLine()) {
+                int start = in.skipBlanks(0);
+                if (start == in.length() || in.at(0) == '#') {
+                    continue;
+                } else if (start > 0) {
+                    if (current == null || !commandsAllowed) {
+                        throw new MakeException("%s: misplaced command: %s",
+                                                file, in.text().trim());
+                    }
+                    current.getCommands().add(in.text());
+                } else {
+                    current = readHeader(in);
+                    commandsAllowed = current.getCommands().isEmpty();
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Add the target and prerequisites named by the rule header that is
+     *  the current line of IN to me, and return the Target. */
+    private Target readHeader(MakeReader in) {
+        int colon = in.indexOf(':', 0);
+        int nameEnd = in.tokenEnd(0, ':');
+        if (colon < 0 || nameEnd == 0 || in.skipBlanks(nameEnd) != colon) {
+            throw new MakeException("%s: bad rule: %s", in.getFile(),
+                                    in.text());
+        }
+        Graph<Target, NoLabel>.Vertex target =
+            vertex(in.intern(_names, 0, nameEnd));
+        target.getLabel().setHasRule();
+        if (_firstTarget == null) {
+            _firstTarget = target.getLabel().getName();
+        }
+        for (int k = in.skipBlanks(colon + 1); k < in.length();
+             k = in.skipBlanks(k)) {
+            int end = in.tokenEnd(k, -1);
+            _graph.add(target, vertex(in.intern(_names, k, end)));
+            k = end;
+        }
+        return target.getLabel();
+    }
+
+    /** Returns the vertex for the file named NAME, adding one if there is
+     *  none. */
+    Graph<Target, NoLabel>.Vertex vertex(String name) {
+        return vertex(_names.intern(name));
+    }
+
+    /** Returns the vertex for the file whose name is BUF[START .. END-1]
+     *  in UTF-8, adding one if there is none. */
+    Graph<Target, NoLabel>.Vertex vertex(byte[] buf, int start, int end) {
+        return vertex(_names.intern(buf, start, end));
+    }
+
+    /** Returns the vertex for the file whose id is ID, adding one if there
+     *  is none.  Ids are assigned densely, in the order in which names are
+     *  first seen. */
+    Graph<Target, NoLabel>.Vertex vertex(int id) {
+        while (_vertices.size() <= id) {
+            int next = _vertices.size();
+            _vertices.add(_graph.add(new Target(_names.name(next), next)));
+        }
+        return _vertices.get(id);
+    }
+
+    /** Returns the number of files named so far; their ids are 0 through
+     *  one less than that. */
+    int fileCount() {
+        if (_names.size() > 0) {
+            vertex(_names.size() - 1);
+        }
+        return _vertices.size();
+    }
+
+    /** Returns the vertex for the file named NAME, or null if there is
+     *  none. */
+    Graph<Target, NoLabel>.Vertex find(String name) {
+        int id = _names.find(name);
+        return id < 0 ? null : vertex(id);
+    }
+
+    /** Returns the dependency graph. */
+    DirectedGraph<Target, NoLabel> getGraph() {
+        return _graph;
+    }
+
+    /** Returns the target of the first rule, or null if there are no
+     *  rules. */
+    String getFirstTarget() {
+        return _firstTarget;
+    }
+
+    /** Set the target of the first rule to NAME. */
+    void setFirstTarget(String name) {
+        _firstTarget = name;
+    }
+
+    /** Returns the current time. */
+    int getCurrentTime() {
+        return _currentTime;
+    }
+
+    /** Set the current time to TIME. */
+    void setCurrentTime(int time) {
+        _currentTime = time;
+    }
+
+    /** Returns the targets that must be rebuilt to bring the files named
+     *  NAMES up to date, in an order in which they may be rebuilt, and
+     *  record them as rebuilt at the current time.  A target must be
+     *  rebuilt if it does not exist, if one of its prerequisites is
+     *  rebuilt, or if one of its prerequisites is newer than it.  Targets
+     *  examined by earlier calls are not examined again.
+     *
+     *  The analysis is a single iterative depth-first traversal of the
+     *  dependency graph that examines each target after all of its
+     *  prerequisites (in postorder), so that each vertex and edge is
+     *  visited at most once however much the prerequisites are shared. */
+    List<Target> rebuild(List<String> names) {
+        ArrayList<Target> result = new ArrayList<Target>();
+        ArrayList<Graph<Target, NoLabel>.Vertex> path =
+            new ArrayList<Graph<Target, NoLabel>.Vertex>();
+        ArrayList<Iteration<Graph<Target, NoLabel>.Edge>> prereqs =
+            new ArrayList<Iteration<Graph<Target, NoLabel>.Edge>>();
+        try {
+            for (String name : names) {
+                Graph<Target, NoLabel>.Vertex start = find(name);
+                if (start == null) {
+                    throw new MakeException("no rule to make %s", name);
+                }
+                if (start.getLabel().isExamined()) {
+                    continue;
+                }
+                start.getLabel().setOnPath(true);
+                path.add(start);
+                prereqs.add(_graph.outEdges(start));
+                while (!path.isEmpty()) {
+                    int top = path.size() - 1;
+                    if (prereqs.get(top).hasNext()) {
+                        Graph<Target, NoLabel>.Vertex next =
+                            prereqs.get(top).next().getV1();
+                        Target prereq = next.getLabel();
+                        if (prereq.isOnPath()) {
+                            throw new MakeException("circular dependency "
+                                                    + "on %s", prereq);
+                        } else if (!prereq.isExamined()) {
+                            prereq.setOnPath(true);
+                            path.add(next);
+                            prereqs.add(_graph.outEdges(next));
+                        }
+                    } else {
+                        prereqs.remove(top);
+                        Graph<Target, NoLabel>.Vertex done =
+                            path.remove(top);
+                        done.getLabel().setOnPath(false);
+                        if (examine(done)) {
+                            result.add(done.getLabel());
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (Graph<Target, NoLabel>.Vertex v : path) {
+                v.getLabel().setOnPath(false);
+            }
+        }
+        return result;
+    }
+
+    /** Returns all the targets that must be rebuilt to bring the files
+     *  named NAMES up to date, including those decided by earlier calls
+     *  to rebuild, in an order in which they may be rebuilt.  Only targets
+     *  that must be rebuilt and their immediate prerequisites are
+     *  visited, since a target that need not be rebuilt has no
+     *  prerequisites that must be. */
+    List<Target> outOfDate(List<String> names) {
+        rebuild(names);
+        ArrayList<Target> result = new ArrayList<Target>();
+        HashSet<Graph<Target, NoLabel>.Vertex> seen =
+            new HashSet<Graph<Target, NoLabel>.Vertex>();
+        ArrayList<Graph<Target, NoLabel>.Vertex> path =
+            new ArrayList<Graph<Target, NoLabel>.Vertex>();
+        ArrayList<Iteration<Graph<Target, NoLabel>.Vertex>> prereqs =
+            new ArrayList<Iteration<Graph<Target, NoLabel>.Vertex>>();
+        for (String name : names) {
+            Graph<Target, NoLabel>.Vertex start = find(name);
+            if (!start.getLabel().isRebuilt() || !seen.add(start)) {
+                continue;
+            }
+            path.add(start);
+            prereqs.add(_graph.successors(start));
+            while (!path.isEmpty()) {
+                int top = path.size() - 1;
+                if (prereqs.get(top).hasNext()) {
+                    Graph<Target, NoLabel>.Vertex next =
+                        prereqs.get(top).next();
+                    if (next.getLabel().isRebuilt() && seen.add(next)) {
+                        path.add(next);
+                        prereqs.add(_graph.successors(next));
+                    }
+                } else {
+                    prereqs.remove(top);
+                    result.add(path.remove(top).getLabel());
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Decide whether the target at V must be rebuilt, given that all of
+     *  its prerequisites have been examined, and record the decision.
+     *  Returns true iff it must be rebuilt. */
+    private boolean examine(Graph<Target, NoLabel>.Vertex v) {
+        Target target = v.getLabel();
+        if (!target.hasRule() && !target.exists()) {
+            throw new MakeException("no rule to make %s", target);
+        }
+        boolean rebuild = !target.exists();
+        for (Graph<Target, NoLabel>.Vertex p : _graph.successors(v)) {
+            Target prereq = p.getLabel();
+            if (prereq.isRebuilt() || prereq.getAge() > target.getAge()) {
+                rebuild = true;
+            }
+        }
+        target.setExamined(rebuild);
+        if (rebuild) {
+            target.setAge(_currentTime);
+        }
+        return rebuild;
+    }
+
+    /** The dependency graph. */
+    private final DirectedGraph<Target, NoLabel> _graph;
+    /** Assigns ids to file names. */
+    private final NameTable _names;
+    /** The vertex in _graph of each file, indexed by id. */
+    private final ArrayList<Graph<Target, NoLabel>.Vertex> _vertices;
+    /** The target of the first rule in the makefile. */
+    private String _firstTarget;
+    /** Initial capacity of a FileInfo. */
+    private static final int INITIAL_FILES = 64;
+    /** The current time, as given by the fileinfo file. */
+    private int _currentTime;
+
+}
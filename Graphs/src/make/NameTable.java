@@ -0,0 +1,137 @@
+package make;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A table that assigns dense ids (0, 1, 2, ...) to file names in the
+ *  order in which they are first seen.  Names may be looked up directly
+ *  from the bytes of an input buffer, so that parsing creates a String
+ *  only the first time it sees each name.  The table is an open-addressed
+ *  hash table with linear probing, kept at most half full.
+ *  @author Austin Gandy
+ */
+class NameTable {
+
+    /** An empty NameTable. */
+    NameTable() {
+        _slots = new int[INITIAL_SLOTS];
+        Arrays.fill(_slots, -1);
+        _hashes = new int[INITIAL_SLOTS / 2];
+        _bytes = new ArrayList<byte[]>();
+        _names = new ArrayList<String>();
+    }
+
+    /** Returns the number of names in me. */
+    int size() {
+        return _names.size();
+    }
+
+    /** Returns the name whose id is ID. */
+    String name(int id) {
+        return _names.get(id);
+    }
+
+    /** Returns the id of the name in BUF[START .. END-1] (encoded in
+     *  UTF-8), adding it if it is not present. */
+    int intern(byte[] buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        int mask = _slots.length - 1;
+        int slot = hash & mask;
+        while (_slots[slot] >= 0) {
+            int id = _slots[slot];
+            if (_hashes[id] == hash
+                && equal(_bytes.get(id), buf, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = _names.size();
+        byte[] name = Arrays.copyOfRange(buf, start, end);
+        _bytes.add(name);
+        _names.add(new String(name, UTF8));
+        if (id == _hashes.length) {
+            _hashes = Arrays.copyOf(_hashes, 2 * id);
+        }
+        _hashes[id] = hash;
+        _slots[slot] = id;
+        if (2 * _names.size() > _slots.length) {
+            grow();
+        }
+        return id;
+    }
+
+    /** Returns the id of NAME, adding it if it is not present. */
+    int intern(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    /** Returns the id of NAME, or -1 if it is not present. */
+    int find(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        int hash = hash(bytes, 0, bytes.length);
+        int mask = _slots.length - 1;
+        for (int slot = hash & mask; _slots[slot] >= 0;
+             slot = (slot + 1) & mask) {
+            int id = _slots[slot];
+            if (_hashes[id] == hash
+                && equal(_bytes.get(id), bytes, 0, bytes.length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /** Double the number of slots, rehashing all names. */
+    private void grow() {
+        _slots = new int[2 * _slots.length];
+        Arrays.fill(_slots, -1);
+        int mask = _slots.length - 1;
+        for (int id = 0; id < _names.size(); id += 1) {
+            int slot = _hashes[id] & mask;
+            while (_slots[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            _slots[slot] = id;
+        }
+    }
+
+    /** Returns the hash of BUF[START .. END-1]. */
+    private static int hash(byte[] buf, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i += 1) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns true iff NAME equals BUF[START .. END-1]. */
+    private static boolean equal(byte[] name, byte[] buf, int start,
+                                 int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i += 1) {
+            if (name[i] != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Encoding of names. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Initial number of slots; a power of 2. */
+    private static final int INITIAL_SLOTS = 64;
+
+    /** The hash table: ids of names, or -1 for empty slots. */
+    private int[] _slots;
+    /** Hash of each name, indexed by id. */
+    private int[] _hashes;
+    /** Encoded bytes of each name, indexed by id. */
+    private final ArrayList<byte[]> _bytes;
+    /** Each name, indexed by id. */
+    private final ArrayList<String> _names;
+
+}
@@ -0,0 +1,330 @@
+package make;
+
+/* A scalability benchmark for make.  Like Testing, this class is not part
+ * of the make package proper: it may be removed without affecting it. */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Generates large synthetic makefiles and fileinfo files, and measures
+ *  how the phases of make scale with their size.
+ *
+ *  Usage:
+ *  <pre>
+ *      java make.ScaleTesting generate [OPTIONS] N MAKEFILE FILEINFO
+ *      java make.ScaleTesting [OPTIONS] [N1 N2 ...]
+ *  </pre>
+ *  The first form writes a makefile and fileinfo file with N files.  The
+ *  second generates a makefile of each size N1, N2, ... (by default,
+ *  1000, 10000, 100000, and 1000000) in a temporary directory and reports
+ *  the time taken to read it (parse), to find the out-of-date targets
+ *  (analysis), and to set up a Scheduler for them (schedule), together
+ *  with the growth of each time relative to the growth in size from the
+ *  previous size.  A growth ratio well above 1 indicates super-linear
+ *  behavior.  The largest sizes need a large heap (-Xmx2g or so).
+ *
+ *  The files are laid out in DEPTH layers of equal size (the last taking
+ *  any remainder).  The files in the first layer are sources, with no
+ *  rules.  Each file in a later layer has a rule whose first prerequisite
+ *  is the file at the same position (modulo the layer size) in the layer
+ *  just before it, so that the dependency graph has the full depth and
+ *  every file is needed, and whose other prerequisites are in any
+ *  earlier layer.  The first rule, for "all", depends on every file in
+ *  the last layer.  The options are
+ *  <pre>
+ *      -depth D    number of layers (default 10).
+ *      -fanin F    mean number of prerequisites per rule (default 3);
+ *                  the number is uniform in 1 .. 2F-1.
+ *      -skew S     shape of the fan-out (default 1).  The prerequisites
+ *                  beyond the first are chosen at position floor(M U^S)
+ *                  among the M files in earlier layers, with U uniform in
+ *                  [0, 1): S = 1 spreads them evenly, and larger S makes
+ *                  the earliest files into hubs with very large fan-out.
+ *      -stale R    fraction of sources that are newer than every target
+ *                  (default 0.01), making everything that depends on
+ *                  them out of date.
+ *      -hub H      probability that a rule in a layer after the middle
+ *                  one also depends on the hub, the first file of the
+ *                  middle layer (default 0.5).  If H is positive, the
+ *                  first source is newer than every target, so that the
+ *                  hub is out of date together with the many targets
+ *                  that depend on it, as when a widely included
+ *                  generated header is regenerated.  (Hubs made by -skew
+ *                  are sources, which are never among the out-of-date
+ *                  targets that the Scheduler sees.)
+ *      -seed N     random seed (default 0).
+ *  </pre>
+ *  All other files exist and are newer than their prerequisites.
+ *  @author Austin Gandy
+ */
+public class ScaleTesting {
+
+    /** Generate files or run the benchmark as directed by ARGS. */
+    public static void main(String... args) throws IOException {
+        ScaleTesting generator = new ScaleTesting();
+        int a = generator.options(args, 0);
+        if (a < args.length && args[a].equals("generate")) {
+            a = generator.options(args, a + 1);
+            if (args.length - a != 3) {
+                usage();
+            }
+            generator.generate(parseSize(args[a]), new File(args[a + 1]),
+                               new File(args[a + 2]));
+            return;
+        }
+        ArrayList<Integer> sizes = new ArrayList<Integer>();
+        for (; a < args.length; a += 1) {
+            sizes.add(parseSize(args[a]));
+        }
+        if (sizes.isEmpty()) {
+            sizes.addAll(Arrays.asList(1000, 10000, 100000, 1000000));
+        }
+        generator.benchmark(sizes);
+    }
+
+    /** Set my parameters from the options in ARGS starting at ARGS[A],
+     *  returning the index of the first argument that is not an
+     *  option. */
+    int options(String[] args, int a) {
+        try {
+            for (; a < args.length && args[a].startsWith("-"); a += 2) {
+                if (a + 1 == args.length) {
+                    usage();
+                }
+                String value = args[a + 1];
+                if (args[a].equals("-depth")) {
+                    _depth = Integer.parseInt(value);
+                } else if (args[a].equals("-fanin")) {
+                    _fanIn = Integer.parseInt(value);
+                } else if (args[a].equals("-skew")) {
+                    _skew = Double.parseDouble(value);
+                } else if (args[a].equals("-stale")) {
+                    _stale = Double.parseDouble(value);
+                } else if (args[a].equals("-hub")) {
+                    _hub = Double.parseDouble(value);
+                } else if (args[a].equals("-seed")) {
+                    _seed = Long.parseLong(value);
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (_depth < 2 || _fanIn < 1 || _skew <= 0
+            || _stale < 0 || _stale > 1 || _hub < 0 || _hub > 1) {
+            usage();
+        }
+        return a;
+    }
+
+    /** Write a makefile with N files to MAKEFILE, and a matching fileinfo
+     *  file to FILEINFO.  Returns the number of out-of-date targets other
+     *  than "all". */
+    int generate(int n, File makefile, File fileInfo) throws IOException {
+        Random random = new Random(_seed);
+        int depth = Math.min(_depth, n);
+        int layerSize = n / depth;
+        int hubLayer = depth / 2, hub = hubLayer * layerSize;
+        boolean[] stale = new boolean[n];
+        int staleCount = 0;
+        PrintWriter rules =
+            new PrintWriter(new BufferedWriter(new FileWriter(makefile)));
+        PrintWriter info =
+            new PrintWriter(new BufferedWriter(new FileWriter(fileInfo)));
+        try {
+            info.println(depth + 2);
+            rules.print("all:");
+            for (int i = (depth - 1) * layerSize; i < n; i += 1) {
+                rules.print(" " + name(i, layerSize));
+            }
+            rules.println();
+            rules.println("\techo all");
+            int[] prereqs = new int[2 * _fanIn];
+            for (int i = 0; i < n; i += 1) {
+                int layer = Math.min(i / layerSize, depth - 1);
+                String name = name(i, layerSize);
+                if (layer == 0) {
+                    stale[i] = random.nextDouble() < _stale
+                        || (i == 0 && _hub > 0);
+                    info.printf("%s %d%n", name, stale[i] ? depth + 1 : 1);
+                    continue;
+                }
+                int start = layer * layerSize;
+                int count = 1 + random.nextInt(2 * _fanIn - 1);
+                prereqs[0] = start - layerSize + (i - start) % layerSize;
+                int k = 1;
+                for (int tries = 0; k < count && tries < 2 * count;
+                     tries += 1) {
+                    int p = (int) (start
+                                   * Math.pow(random.nextDouble(), _skew));
+                    if (!contains(prereqs, k, p)) {
+                        prereqs[k] = p;
+                        k += 1;
+                    }
+                }
+                if (layer > hubLayer && _hub > 0
+                    && random.nextDouble() < _hub
+                    && !contains(prereqs, k, hub)) {
+                    prereqs[k] = hub;
+                    k += 1;
+                }
+                rules.print(name + ":");
+                for (int j = 0; j < k; j += 1) {
+                    rules.print(" " + name(prereqs[j], layerSize));
+                    stale[i] |= stale[prereqs[j]];
+                }
+                rules.println();
+                rules.println("\tbuild " + name);
+                info.printf("%s %d%n", name, layer + 1);
+                if (stale[i]) {
+                    staleCount += 1;
+                }
+            }
+        } finally {
+            rules.close();
+            info.close();
+        }
+        if (rules.checkError() || info.checkError()) {
+            throw new IOException("could not write generated files");
+        }
+        return staleCount;
+    }
+
+    /** Returns true iff X is among the first K elements of VALUES. */
+    private static boolean contains(int[] values, int k, int x) {
+        for (int i = 0; i < k; i += 1) {
+            if (values[i] == x) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the name of file #I, where there are LAYERSIZE files in
+     *  each layer. */
+    private static String name(int i, int layerSize) {
+        return (i < layerSize ? "src/f" : "obj/f") + i
+            + (i < layerSize ? ".c" : ".o");
+    }
+
+    /** Generate a makefile of each of the SIZES in turn, and report the
+     *  time taken by each phase of make on it. */
+    void benchmark(List<Integer> sizes) throws IOException {
+        File dir = File.createTempFile("makescale", "");
+        dir.delete();
+        if (!dir.mkdir()) {
+            throw new IOException("could not create " + dir);
+        }
+        File makefile = new File(dir, "Makefile");
+        File fileInfo = new File(dir, "fileinfo");
+        try {
+            generate(sizes.get(0), makefile, fileInfo);
+            measure(makefile, fileInfo);
+            System.out.printf("%10s %10s %10s %10s %10s   %s%n", "files",
+                              "parse ms", "analyze ms", "sched ms",
+                              "stale", "growth/size growth");
+            double[] previous = null;
+            int previousSize = 0;
+            for (int n : sizes) {
+                int expected = generate(n, makefile, fileInfo);
+                double[] times = measure(makefile, fileInfo);
+                if ((int) times[PHASES] != expected + 1) {
+                    System.out.printf("expected %d out-of-date targets%n",
+                                      expected + 1);
+                }
+                System.out.printf("%10d %10.1f %10.1f %10.1f %10d  ", n,
+                                  times[0], times[1], times[2],
+                                  (int) times[PHASES]);
+                for (int p = 0; p < PHASES && previous != null; p += 1) {
+                    System.out.printf(" %5.2f",
+                                      (times[p] / previous[p])
+                                      / ((double) n / previousSize));
+                }
+                System.out.println();
+                previous = times;
+                previousSize = n;
+            }
+        } finally {
+            makefile.delete();
+            fileInfo.delete();
+            dir.delete();
+        }
+    }
+
+    /** Returns the times in milliseconds taken by the phases of make
+     *  on MAKEFILE and FILEINFO, followed by the number of out-of-date
+     *  targets. */
+    private double[] measure(File makefile, File fileInfo)
+        throws FileNotFoundException {
+        double[] result = new double[PHASES + 1];
+        System.gc();
+        long start = System.nanoTime();
+        Makefile state = Makefile.read(makefile.getPath(), fileInfo.getPath());
+        long parsed = System.nanoTime();
+        List<Target> stale = state.outOfDate(Arrays.asList("all"));
+        long analyzed = System.nanoTime();
+        new Scheduler(state, stale, 1, false, new BuildStats(),
+                      new PrintStream(new OutputStream() {
+                          @Override
+                          public void write(int b) {
+                          }
+                      }));
+        long scheduled = System.nanoTime();
+        result[0] = (parsed - start) / 1e6;
+        result[1] = (analyzed - parsed) / 1e6;
+        result[2] = (scheduled - analyzed) / 1e6;
+        result[PHASES] = stale.size();
+        return result;
+    }
+
+    /** Returns the size given by TEXT. */
+    private static int parseSize(String text) {
+        try {
+            int n = Integer.parseInt(text);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through to usage. */
+        }
+        usage();
+        return 0;
+    }
+
+    /** Print a usage message and exit abnormally. */
+    private static void usage() {
+        System.err.println("Usage: java make.ScaleTesting [generate] "
+                           + "[-depth D] [-fanin F] [-skew S] [-stale R] "
+                           + "[-hub H] [-seed N] SIZE ...");
+        System.exit(1);
+    }
+
+    /** Number of phases measured. */
+    private static final int PHASES = 3;
+
+    /** Number of layers. */
+    private int _depth = 10;
+    /** Mean number of prerequisites of a rule. */
+    private int _fanIn = 3;
+    /** Exponent shaping the choice of later prerequisites. */
+    private double _skew = 1;
+    /** Fraction of sources that are out of date. */
+    private double _stale = 0.01;
+    /** Probability that a rule after the middle layer depends on the
+     *  hub. */
+    private double _hub = 0.5;
+    /** Random seed. */
+    private long _seed;
+
+}
@@ -0,0 +1,369 @@
+package make;
+
+import graph.Graph;
+import graph.NoLabel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/** Runs the commands of a set of out-of-date targets, up to a given number
+ *  of targets at a time, never starting a target before all of its
+ *  prerequisites in the set have been rebuilt successfully.
+ *
+ *  Each target in the set counts its unfinished prerequisites in the set.
+ *  Targets whose count is zero wait in a ready queue; the scheduler starts
+ *  ready targets on a pool of worker threads while fewer than the
+ *  permitted number are running, and when a target finishes, decrements
+ *  the counts of the targets that depend on it.
+ *
+ *  Ready targets start in order of priority.  The priority of a target is
+ *  the length of the critical path from it: its estimated duration plus
+ *  the largest priority of any target that depends on it.  Starting the
+ *  targets with the longest chains of work after them first keeps the
+ *  workers busy toward the end of the build.  Durations are estimated
+ *  from a BuildStats, which the scheduler updates with the durations it
+ *  measures.
+ *
+ *  The commands of each
+ *  target run in order through the shell, each with its output captured;
+ *  the scheduler prints the commands and output of each target as a
+ *  unit, in the order in which the targets were started.
+ *
+ *  If given an ActionCache, the scheduler skips each target whose commands
+ *  and prerequisite contents match an entry in the cache and whose own
+ *  content is the one recorded there, and records each target it
+ *  rebuilds.  A target that has no file of its own, before or after its
+ *  commands run (such as "clean" or "all"), is never skipped or
+ *  recorded, since there is nothing to show that its commands have had
+ *  their effect.  Files are taken to be named relative to the current
+ *  directory.
+ *
+ *  When a command fails, the scheduler stops starting new targets and
+ *  waits for the running ones to finish, or, if it was asked to keep
+ *  going, continues with all targets that do not depend on the failed
+ *  one.
+ *  @author Austin Gandy
+ */
+class Scheduler {
+
+    /** A scheduler for rebuilding TARGETS, which must be the result of
+     *  MAKEFILE.rebuild, running up to JOBS targets at a time.  It keeps
+     *  going after a failure iff KEEPGOING, estimates and records
+     *  durations in STATS, and prints to OUT. */
+    Scheduler(Makefile makefile, List<Target> targets, int jobs,
+              boolean keepGoing, BuildStats stats, PrintStream out) {
+        _targets = new ArrayList<Target>(targets);
+        _jobs = jobs;
+        _keepGoing = keepGoing;
+        _stats = stats;
+        _out = out;
+        int n = _targets.size();
+        HashMap<Target, Integer> index = new HashMap<Target, Integer>();
+        for (int i = 0; i < n; i += 1) {
+            index.put(_targets.get(i), i);
+        }
+        _waiting = new int[n];
+        _dependents = new ArrayList<List<Integer>>(n);
+        _prereqs = new ArrayList<List<String>>(n);
+        for (int i = 0; i < n; i += 1) {
+            _dependents.add(new ArrayList<Integer>());
+            _prereqs.add(new ArrayList<String>());
+        }
+        for (int i = 0; i < n; i += 1) {
+            Graph<Target, NoLabel>.Vertex v =
+                makefile.find(_targets.get(i).getName());
+            for (Graph<Target, NoLabel>.Vertex p
+                     : makefile.getGraph().successors(v)) {
+                _prereqs.get(i).add(p.getLabel().getName());
+                Integer prereq = index.get(p.getLabel());
+                if (prereq == null) {
+                    continue;
+                }
+                List<Integer> dependents = _dependents.get(prereq);
+                int last = dependents.size() - 1;
+                if (last < 0 || dependents.get(last) != i) {
+                    dependents.add(i);
+                    _waiting[i] += 1;
+                }
+            }
+        }
+        _priority = new long[n];
+        for (int i = n - 1; i >= 0; i -= 1) {
+            long after = 0;
+            for (int d : _dependents.get(i)) {
+                after = Math.max(after, _priority[d]);
+            }
+            _priority[i] = stats.estimate(_targets.get(i).getName()) + after;
+        }
+    }
+
+    /** Use CACHE to skip rebuilds whose inputs are unchanged in content,
+     *  or no cache if CACHE is null. */
+    void setCache(ActionCache cache) {
+        _cache = cache;
+    }
+
+    /** Returns the priority of target #I, the estimated duration of the
+     *  longest chain of targets that starts with it. */
+    long priority(int i) {
+        return _priority[i];
+    }
+
+    /** Rebuild my targets.  Returns true iff all of them were rebuilt
+     *  successfully. */
+    boolean run() {
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        CompletionService<Job> done = new ExecutorCompletionService<Job>(pool);
+        PriorityQueue<Integer> ready =
+            new PriorityQueue<Integer>(Math.max(1, _targets.size()),
+                                       new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i0, Integer i1) {
+                    if (_priority[i0] != _priority[i1]) {
+                        return _priority[i0] > _priority[i1] ? -1 : 1;
+                    }
+                    return i0.compareTo(i1);
+                }
+            });
+        for (int i = 0; i < _targets.size(); i += 1) {
+            if (_waiting[i] == 0) {
+                ready.add(i);
+            }
+        }
+        ArrayList<Job> started = new ArrayList<Job>();
+        int printed = 0;
+        int running = 0;
+        boolean ok = true;
+        try {
+            while (running > 0 || (!ready.isEmpty() && (ok || _keepGoing))) {
+                while (running < _jobs && !ready.isEmpty()
+                       && (ok || _keepGoing)) {
+                    Job job = new Job(ready.poll());
+                    started.add(job);
+                    done.submit(job);
+                    running += 1;
+                }
+                Job finished = done.take().get();
+                running -= 1;
+                if (finished.succeeded()) {
+                    if (!finished.skipped()) {
+                        _stats.record(_targets.get(finished.target())
+                                      .getName(), finished.millis());
+                    }
+                    for (int d : _dependents.get(finished.target())) {
+                        _waiting[d] -= 1;
+                        if (_waiting[d] == 0) {
+                            ready.add(d);
+                        }
+                    }
+                } else {
+                    ok = false;
+                }
+                while (printed < started.size()
+                       && started.get(printed).isDone()) {
+                    started.get(printed).print(_out);
+                    printed += 1;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        } catch (ExecutionException e) {
+            throw new MakeException("%s", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        _out.flush();
+        return ok && started.size() == _targets.size();
+    }
+
+    /** The rebuilding of one target. */
+    private class Job implements Callable<Job> {
+
+        /** A job that rebuilds target #TARGET. */
+        Job(int target) {
+            _target = target;
+        }
+
+        @Override
+        public Job call() {
+            long start = System.nanoTime();
+            Target target = _targets.get(_target);
+            String key = null;
+            if (_cache != null) {
+                ArrayList<String> digests = new ArrayList<String>();
+                for (String prereq : _prereqs.get(_target)) {
+                    digests.add(digest(prereq));
+                }
+                key = ActionCache.key(target.getCommands(),
+                                      _prereqs.get(_target), digests);
+                String own = digest(target.getName());
+                if (!own.equals(ActionCache.MISSING)
+                    && own.equals(_cache.get(key))) {
+                    _skipped = true;
+                }
+            }
+            if (!_skipped) {
+                for (String command : target.getCommands()) {
+                    _output.println(command);
+                    if (!execute(command.trim())) {
+                        break;
+                    }
+                }
+                if (key != null && succeeded()) {
+                    String result =
+                        ActionCache.digest(new File(target.getName()));
+                    _digests.put(target.getName(), result);
+                    if (!result.equals(ActionCache.MISSING)) {
+                        _cache.put(key, result);
+                    }
+                }
+            }
+            _millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            _done = true;
+            return this;
+        }
+
+        /** Run COMMAND through the shell, appending its output to _output.
+         *  Returns true iff it succeeds. */
+        private boolean execute(String command) {
+            ProcessBuilder builder =
+                new ProcessBuilder("/bin/sh", "-c", command);
+            builder.redirectErrorStream(true);
+            try {
+                Process process = builder.start();
+                process.getOutputStream().close();
+                copy(process.getInputStream());
+                _status = process.waitFor();
+            } catch (IOException e) {
+                _output.println(e.getMessage());
+                _status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                _status = -1;
+            }
+            return _status == 0;
+        }
+
+        /** Append everything read from IN to _output. */
+        private void copy(InputStream in) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    _bytes.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        /** Returns the number of my target. */
+        int target() {
+            return _target;
+        }
+
+        /** Returns the time my commands took, in milliseconds. */
+        long millis() {
+            return _millis;
+        }
+
+        /** Returns true iff I have finished. */
+        boolean isDone() {
+            return _done;
+        }
+
+        /** Returns true iff my target was found in the cache, and so not
+         *  rebuilt. */
+        boolean skipped() {
+            return _skipped;
+        }
+
+        /** Returns true iff all my commands succeeded. */
+        boolean succeeded() {
+            return _status == 0;
+        }
+
+        /** Print my commands and their output to OUT, followed by an error
+         *  message if I failed. */
+        void print(PrintStream out) {
+            _output.flush();
+            out.write(_bytes.toByteArray(), 0, _bytes.size());
+            if (!succeeded()) {
+                out.printf("make: *** [%s] Error %d%n",
+                           _targets.get(_target), _status);
+            }
+        }
+
+        /** The number of my target. */
+        private final int _target;
+        /** The captured commands and output. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+        /** Writes into _bytes. */
+        private final PrintStream _output = new PrintStream(_bytes, true);
+        /** Time taken by my commands, in milliseconds. */
+        private long _millis;
+        /** True iff my target was found in the cache. */
+        private boolean _skipped;
+        /** Exit status of my last command. */
+        private int _status;
+        /** True iff I have finished. */
+        private volatile boolean _done;
+    }
+
+    /** Returns the content digest of the file named NAME, computing it
+     *  only the first time it is needed, or after the file is rebuilt. */
+    private String digest(String name) {
+        String result = _digests.get(name);
+        if (result == null) {
+            result = ActionCache.digest(new File(name));
+            _digests.put(name, result);
+        }
+        return result;
+    }
+
+    /** Size of the buffer for reading command output. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The targets to rebuild. */
+    private final ArrayList<Target> _targets;
+    /** The maximum number of targets to rebuild at once. */
+    private final int _jobs;
+    /** True iff failures do not stop targets unrelated to them. */
+    private final boolean _keepGoing;
+    /** Estimated and measured durations of targets. */
+    private final BuildStats _stats;
+    /** Where commands and their output are printed. */
+    private final PrintStream _out;
+    /** Number of unfinished prerequisites of each target. */
+    private final int[] _waiting;
+    /** Numbers of the targets that depend on each target. */
+    private final ArrayList<List<Integer>> _dependents;
+    /** Names of the prerequisites of each target, in order. */
+    private final ArrayList<List<String>> _prereqs;
+    /** The cache of earlier rebuilds, or null if none. */
+    private ActionCache _cache;
+    /** Content digests of files, by name, computed so far. */
+    private final ConcurrentHashMap<String, String> _digests =
+        new ConcurrentHashMap<String, String>();
+    /** Priority of each target. */
+    private final long[] _priority;
+
+}
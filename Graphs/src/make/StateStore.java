@@ -0,0 +1,274 @@
+package make;
+
+import graph.Graph;
+import graph.NoLabel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/** A binary file holding the state read from a makefile and a fileinfo
+ *  file, so that later runs can skip parsing them.  The file records the
+ *  modification times and sizes of the two text files, and is used only
+ *  while both still match.
+ *
+ *  The file is a sequence of big-endian fields:
+ *  <pre>
+ *    int MAGIC, int VERSION,
+ *    long makefile time, long makefile size,
+ *    long fileinfo time, long fileinfo size,
+ *    int current time, int id of first target (-1 if none),
+ *    int N (files), int B, byte[B] names, int[N+1] name offsets,
+ *    byte[N] flags, int[N] change dates,
+ *    int E, int[E] prerequisite ids, int[N+1] prerequisite offsets,
+ *    int C, int[N+1] command offsets, int D, byte[D] commands,
+ *    int[C+1] command text offsets.
+ *  </pre>
+ *  Files are identified by the ids of their Makefile, the names of file #i
+ *  are bytes [names offsets[i] .. names offsets[i+1]-1] of the names in
+ *  UTF-8, and similarly for prerequisites and commands (the dependency
+ *  graph is in compressed sparse row form).  The reader maps the file
+ *  into memory and takes the arrays directly from the mapping.
+ *  @author Austin Gandy
+ */
+class StateStore {
+
+    /** Returns the Makefile saved in STATE for the makefile MAKEFILE and
+     *  the fileinfo file FILEINFO, or null if STATE is missing, malformed,
+     *  or out of date with respect to either of them. */
+    static Makefile read(File state, File makefile, File fileInfo) {
+        if (!state.isFile() || state.length() < HEADER_SIZE) {
+            return null;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(state, "r");
+            MappedByteBuffer buf;
+            try {
+                buf = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                                            file.length());
+            } finally {
+                file.close();
+            }
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+                || buf.getLong() != makefile.lastModified()
+                || buf.getLong() != makefile.length()
+                || buf.getLong() != fileInfo.lastModified()
+                || buf.getLong() != fileInfo.length()) {
+                return null;
+            }
+            return decode(buf);
+        } catch (IOException e) {
+            return null;
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    /** Returns the Makefile whose state follows the header in BUF. */
+    private static Makefile decode(MappedByteBuffer buf) {
+        Makefile result = new Makefile();
+        result.setCurrentTime(buf.getInt());
+        int first = buf.getInt();
+        int n = buf.getInt();
+        byte[] names = new byte[buf.getInt()];
+        buf.get(names);
+        int[] nameOffsets = ints(buf, n + 1);
+        byte[] flags = new byte[n];
+        buf.get(flags);
+        int[] ages = ints(buf, n);
+        int[] prereqs = ints(buf, buf.getInt());
+        int[] prereqOffsets = ints(buf, n + 1);
+        int c = buf.getInt();
+        int[] commandOffsets = ints(buf, n + 1);
+        byte[] commands = new byte[buf.getInt()];
+        buf.get(commands);
+        int[] textOffsets = ints(buf, c + 1);
+
+        for (int i = 0; i < n; i += 1) {
+            Graph<Target, NoLabel>.Vertex v =
+                result.vertex(names, nameOffsets[i], nameOffsets[i + 1]);
+            if (v.getLabel().getId() != i) {
+                throw new IllegalArgumentException("duplicate name");
+            }
+            Target target = v.getLabel();
+            if ((flags[i] & HAS_RULE) != 0) {
+                target.setHasRule();
+            }
+            target.setFileAge((flags[i] & HAS_AGE) != 0, ages[i]);
+            List<String> list = target.getCommands();
+            for (int k = commandOffsets[i]; k < commandOffsets[i + 1];
+                 k += 1) {
+                list.add(new String(commands, textOffsets[k],
+                                    textOffsets[k + 1] - textOffsets[k],
+                                    UTF8));
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            Graph<Target, NoLabel>.Vertex v = result.vertex(i);
+            for (int k = prereqOffsets[i]; k < prereqOffsets[i + 1];
+                 k += 1) {
+                if (prereqs[k] < 0 || prereqs[k] >= n) {
+                    throw new IllegalArgumentException("bad prerequisite");
+                }
+                result.getGraph().add(v, result.vertex(prereqs[k]));
+            }
+        }
+        if (first >= 0) {
+            result.setFirstTarget(result.vertex(first).getLabel().getName());
+        }
+        return result;
+    }
+
+    /** Returns the next COUNT ints of BUF. */
+    private static int[] ints(MappedByteBuffer buf, int count) {
+        int[] result = new int[count];
+        IntBuffer view = buf.asIntBuffer();
+        view.get(result);
+        buf.position(buf.position() + 4 * count);
+        return result;
+    }
+
+    /** Save the state of MAKEFILESTATE, which must have just been read
+     *  from the makefile MAKEFILE and the fileinfo file FILEINFO, in STATE.
+     *  The file is written under another name and then renamed, so that
+     *  readers never see a partial file. */
+    static void write(File state, Makefile makefileState, File makefile,
+                      File fileInfo) throws IOException {
+        int n = makefileState.fileCount();
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        ByteArrayOutputStream commands = new ByteArrayOutputStream();
+        int[] nameOffsets = new int[n + 1];
+        int[] prereqOffsets = new int[n + 1];
+        int[] commandOffsets = new int[n + 1];
+        IntList prereqs = new IntList();
+        IntList textOffsets = new IntList();
+        byte[] flags = new byte[n];
+        int[] ages = new int[n];
+        textOffsets.add(0);
+        for (int i = 0; i < n; i += 1) {
+            Graph<Target, NoLabel>.Vertex v = makefileState.vertex(i);
+            Target target = v.getLabel();
+            names.write(target.getName().getBytes(UTF8));
+            nameOffsets[i + 1] = names.size();
+            flags[i] = (byte) ((target.hasRule() ? HAS_RULE : 0)
+                               | (target.hasFileAge() ? HAS_AGE : 0));
+            ages[i] = target.getFileAge();
+            for (Graph<Target, NoLabel>.Vertex p
+                     : makefileState.getGraph().successors(v)) {
+                prereqs.add(p.getLabel().getId());
+            }
+            prereqOffsets[i + 1] = prereqs.size();
+            for (String command : target.getCommands()) {
+                commands.write(command.getBytes(UTF8));
+                textOffsets.add(commands.size());
+            }
+            commandOffsets[i + 1] = textOffsets.size() - 1;
+        }
+        String firstName = makefileState.getFirstTarget();
+        int first = firstName == null ? -1
+            : makefileState.find(firstName).getLabel().getId();
+
+        File temp = new File(state.getPath() + ".tmp");
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(makefile.lastModified());
+            out.writeLong(makefile.length());
+            out.writeLong(fileInfo.lastModified());
+            out.writeLong(fileInfo.length());
+            out.writeInt(makefileState.getCurrentTime());
+            out.writeInt(first);
+            out.writeInt(n);
+            out.writeInt(names.size());
+            names.writeTo(out);
+            writeInts(out, nameOffsets, n + 1);
+            out.write(flags);
+            writeInts(out, ages, n);
+            out.writeInt(prereqs.size());
+            writeInts(out, prereqs.array(), prereqs.size());
+            writeInts(out, prereqOffsets, n + 1);
+            out.writeInt(textOffsets.size() - 1);
+            writeInts(out, commandOffsets, n + 1);
+            out.writeInt(commands.size());
+            commands.writeTo(out);
+            writeInts(out, textOffsets.array(), textOffsets.size());
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(state)) {
+            state.delete();
+            if (!temp.renameTo(state)) {
+                throw new IOException("could not write " + state);
+            }
+        }
+    }
+
+    /** Write the first COUNT elements of VALUES to OUT. */
+    private static void writeInts(DataOutputStream out, int[] values,
+                                  int count) throws IOException {
+        for (int i = 0; i < count; i += 1) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    /** A growable list of ints. */
+    private static class IntList {
+        /** Add X to the end of me. */
+        void add(int x) {
+            if (_size == _data.length) {
+                _data = Arrays.copyOf(_data, 2 * _size);
+            }
+            _data[_size] = x;
+            _size += 1;
+        }
+
+        /** Returns my size. */
+        int size() {
+            return _size;
+        }
+
+        /** Returns an array whose first size() elements are mine. */
+        int[] array() {
+            return _data;
+        }
+
+        /** My elements, in _data[0 .. _size-1]. */
+        private int[] _data = new int[16];
+        /** My size. */
+        private int _size;
+    }
+
+    /** Identifies state files. */
+    static final int MAGIC = 0x4d4b5354;
+    /** Version of the format. */
+    static final int VERSION = 1;
+    /** Size of the fixed part of the header. */
+    private static final int HEADER_SIZE = 2 * 4 + 4 * 8 + 3 * 4;
+    /** Flag for a file with a rule. */
+    private static final int HAS_RULE = 1;
+    /** Flag for a file with a change date. */
+    private static final int HAS_AGE = 2;
+    /** Encoding of names and commands. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+}
@@ -0,0 +1,150 @@
+package make;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A file known to make: the label on a vertex of the dependency graph.
+ *  A Target records the rule (if any) for building it, its change date
+ *  (if it exists), and what the current run of make has determined about
+ *  it.
+ *  @author Austin Gandy
+ */
+class Target {
+
+    /** A Target named NAME, whose id in its Makefile is ID, that has no
+     *  rule and does not exist. */
+    Target(String name, int id) {
+        _name = name;
+        _id = id;
+        _commands = new ArrayList<String>();
+    }
+
+    /** Returns my name. */
+    String getName() {
+        return _name;
+    }
+
+    /** Returns my id in my Makefile. */
+    int getId() {
+        return _id;
+    }
+
+    /** Returns true iff some rule in the makefile names me as its
+     *  target. */
+    boolean hasRule() {
+        return _hasRule;
+    }
+
+    /** Record that a rule names me as its target. */
+    void setHasRule() {
+        _hasRule = true;
+    }
+
+    /** Returns the commands that rebuild me, in order. */
+    List<String> getCommands() {
+        return _commands;
+    }
+
+    /** Returns true iff I exist, that is, I have a change date. */
+    boolean exists() {
+        return _exists;
+    }
+
+    /** Returns my change date.  Meaningful only if I exist. */
+    int getAge() {
+        return _age;
+    }
+
+    /** Set my change date to AGE; after this, I exist. */
+    void setAge(int age) {
+        _age = age;
+        _exists = true;
+    }
+
+    /** Returns true iff the fileinfo file gives me a change date. */
+    boolean hasFileAge() {
+        return _hasFileAge;
+    }
+
+    /** Returns the change date given me by the fileinfo file.  Meaningful
+     *  only if hasFileAge(). */
+    int getFileAge() {
+        return _fileAge;
+    }
+
+    /** Record that the fileinfo file gives me the change date AGE, or no
+     *  change date if HASAGE is false, and set my change date
+     *  accordingly. */
+    void setFileAge(boolean hasAge, int age) {
+        _hasFileAge = hasAge;
+        _fileAge = age;
+        reset();
+    }
+
+    /** Forget what the current run has determined about me, restoring my
+     *  change date to the one in the fileinfo file. */
+    void reset() {
+        _exists = _hasFileAge;
+        _age = _fileAge;
+        _examined = _rebuilt = false;
+    }
+
+    /** Returns true iff the current run has decided whether I am out of
+     *  date. */
+    boolean isExamined() {
+        return _examined;
+    }
+
+    /** Record that the current run has decided whether I am out of date,
+     *  and that I am to be rebuilt iff REBUILT. */
+    void setExamined(boolean rebuilt) {
+        _examined = true;
+        _rebuilt = rebuilt;
+    }
+
+    /** Returns true iff the current run rebuilds me. */
+    boolean isRebuilt() {
+        return _rebuilt;
+    }
+
+    /** Returns true iff I am on the current path of the out-of-date
+     *  analysis. */
+    boolean isOnPath() {
+        return _onPath;
+    }
+
+    /** Record whether I am on the current path of the out-of-date
+     *  analysis, according to ONPATH. */
+    void setOnPath(boolean onPath) {
+        _onPath = onPath;
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+
+    /** My name. */
+    private final String _name;
+    /** My id. */
+    private final int _id;
+    /** The commands that rebuild me. */
+    private final List<String> _commands;
+    /** True iff a rule names me as its target. */
+    private boolean _hasRule;
+    /** True iff I have a change date. */
+    private boolean _exists;
+    /** My change date. */
+    private int _age;
+    /** True iff the fileinfo file gives me a change date. */
+    private boolean _hasFileAge;
+    /** The change date given me by the fileinfo file. */
+    private int _fileAge;
+    /** True iff the current run has examined me. */
+    private boolean _examined;
+    /** True iff the current run rebuilds me. */
+    private boolean _rebuilt;
+    /** True iff I am on the current path of the analysis. */
+    private boolean _onPath;
+
+}
@@ -5,6 +5,19 @@ package make;
  * may not be part of your make package per se (that is, it must be
  * possible to remove them and still have your package work). */
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import graph.Graph;
+import graph.NoLabel;
+
 import org.junit.Test;
 
 import ucb.junit.textui;
@@ -23,4 +36,347 @@ public class Testing {
         assertTrue(true);
     }
 
+    /** Returns the names of TARGETS. */
+    private static List<String> names(List<Target> targets) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Target target : targets) {
+            result.add(target.getName());
+        }
+        return result;
+    }
+
+    @Test
+    public void rebuildOrder() throws FileNotFoundException {
+        Makefile makefile =
+            Makefile.read("make-tests/make01.mk", "make-tests/file01");
+        assertEquals(Arrays.asList("foo.c", "foo.o", "foo"),
+                     names(makefile.rebuild(Arrays.asList("foo.o", "foo"))));
+        assertEquals(Arrays.asList(),
+                     names(makefile.rebuild(Arrays.asList("foo.c"))));
+        assertEquals(100, makefile.find("foo").getLabel().getAge());
+    }
+
+    @Test
+    public void sharedPrerequisites() {
+        Makefile makefile = new Makefile();
+        int width = 30;
+        for (int i = 0; i < width; i += 1) {
+            makefile.getGraph().add(makefile.vertex("L" + i),
+                                    makefile.vertex("A" + i));
+            makefile.getGraph().add(makefile.vertex("L" + i),
+                                    makefile.vertex("B" + i));
+            makefile.getGraph().add(makefile.vertex("A" + i),
+                                    makefile.vertex("L" + (i + 1)));
+            makefile.getGraph().add(makefile.vertex("B" + i),
+                                    makefile.vertex("L" + (i + 1)));
+            makefile.vertex("L" + i).getLabel().setHasRule();
+            makefile.vertex("A" + i).getLabel().setHasRule();
+            makefile.vertex("B" + i).getLabel().setHasRule();
+        }
+        makefile.vertex("L" + width).getLabel().setHasRule();
+        assertEquals(3 * width + 1,
+                     makefile.rebuild(Arrays.asList("L0")).size());
+    }
+
+    @Test(expected = MakeException.class)
+    public void cycle() {
+        Makefile makefile = new Makefile();
+        makefile.getGraph().add(makefile.vertex("A"), makefile.vertex("B"));
+        makefile.getGraph().add(makefile.vertex("B"), makefile.vertex("C"));
+        makefile.getGraph().add(makefile.vertex("C"), makefile.vertex("B"));
+        makefile.vertex("A").getLabel().setHasRule();
+        makefile.vertex("B").getLabel().setHasRule();
+        makefile.vertex("C").getLabel().setHasRule();
+        makefile.rebuild(Arrays.asList("A"));
+    }
+
+    /** Returns a Makefile in which each target TARGETS[i][0] is made by
+     *  the command TARGETS[i][1] from the prerequisites TARGETS[i][2..]. */
+    private static Makefile makefile(String[][] targets) {
+        Makefile result = new Makefile();
+        for (String[] rule : targets) {
+            Target target = result.vertex(rule[0]).getLabel();
+            target.setHasRule();
+            target.getCommands().add("\t" + rule[1]);
+            for (int i = 2; i < rule.length; i += 1) {
+                result.getGraph().add(result.vertex(rule[0]),
+                                      result.vertex(rule[i]));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void parallelKeepGoing() {
+        Makefile makefile = makefile(new String[][] {
+                { "all", "echo all", "a", "b" },
+                { "a", "echo a", "x" },
+                { "b", "echo b; false", "x" },
+                { "c", "echo c", "a" },
+                { "x", "echo x" },
+            });
+        List<Target> stale = makefile.rebuild(Arrays.asList("all", "c"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Scheduler scheduler =
+            new Scheduler(makefile, stale, 4, true, new BuildStats(),
+                          new PrintStream(bytes));
+        assertFalse(scheduler.run());
+        String out = bytes.toString();
+        assertTrue(out.indexOf("\nx\n") < out.indexOf("\na\n"));
+        assertTrue(out.indexOf("\na\n") < out.indexOf("\nc\n"));
+        assertTrue(out.contains("make: *** [b] Error 1"));
+        assertFalse(out.contains("\nall\n"));
+    }
+
+    @Test
+    public void criticalPath() {
+        Makefile makefile = makefile(new String[][] {
+                { "all", "true", "long1", "short" },
+                { "long1", "true", "long2" },
+                { "long2", "true" },
+                { "short", "true" },
+            });
+        BuildStats stats = new BuildStats();
+        stats.record("all", 1);
+        stats.record("long1", 100);
+        stats.record("long2", 100);
+        stats.record("short", 10);
+        List<Target> stale = makefile.rebuild(Arrays.asList("all"));
+        Scheduler scheduler =
+            new Scheduler(makefile, stale, 1, false, stats,
+                          new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(201, scheduler.priority(indexOf(stale, "long2")));
+        assertEquals(11, scheduler.priority(indexOf(stale, "short")));
+        assertEquals(1, scheduler.priority(indexOf(stale, "all")));
+        stats.record("short", 20);
+        assertEquals(15, stats.estimate("short"));
+        assertEquals(54, stats.estimate("unknown"));
+    }
+
+    @Test(timeout = 10000)
+    public void staleHub() {
+        Makefile makefile = new Makefile();
+        int width = 150000;
+        Graph<Target, NoLabel>.Vertex hub = makefile.vertex("hub.h");
+        hub.getLabel().setHasRule();
+        for (int i = 0; i < width; i += 1) {
+            Graph<Target, NoLabel>.Vertex v = makefile.vertex("t" + i);
+            v.getLabel().setHasRule();
+            makefile.getGraph().add(v, hub);
+            makefile.getGraph().add(makefile.vertex("all"), v);
+        }
+        makefile.getGraph().add(makefile.vertex("t0"), hub);
+        makefile.vertex("all").getLabel().setHasRule();
+        List<Target> stale = makefile.rebuild(Arrays.asList("all"));
+        assertEquals(width + 2, stale.size());
+        BuildStats stats = new BuildStats();
+        stats.record("hub.h", 5);
+        stats.record("t0", 3);
+        stats.record("all", 1);
+        Scheduler scheduler =
+            new Scheduler(makefile, stale, 1, false, stats,
+                          new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(5 + stats.estimate("t1") + 1,
+                     scheduler.priority(indexOf(stale, "hub.h")));
+        assertEquals(4, scheduler.priority(indexOf(stale, "t0")));
+    }
+
+    /** Returns the index of the target named NAME in TARGETS. */
+    private static int indexOf(List<Target> targets, String name) {
+        return names(targets).indexOf(name);
+    }
+
+    @Test
+    public void updateFileInfo() throws IOException {
+        File info = File.createTempFile("fileinfo", null);
+        info.deleteOnExit();
+        writeFile(info, "100\nfoo.h 1\n"
+                  + "foo.y 10\nfoo.c 20\nfoo.o 30\nfoo 40\n");
+        Makefile makefile = new Makefile();
+        makefile.readRules(new File("make-tests/make01.mk"));
+        makefile.readFileInfo(info);
+        List<String> all = Arrays.asList("foo");
+        assertEquals(Arrays.asList(), names(makefile.outOfDate(all)));
+        writeFile(info, "100\nfoo.h 1\n"
+                  + "foo.y 10\nfoo.c 35\nfoo.o 30\nfoo 40\n");
+        assertEquals(3, makefile.updateFileInfo(info));
+        assertEquals(Arrays.asList("foo.o", "foo"),
+                     names(makefile.outOfDate(all)));
+        writeFile(info, "100\nfoo.h 1\n"
+                  + "foo.y 5\nfoo.c 35\nfoo.o 30\nfoo 40\n");
+        assertEquals(4, makefile.updateFileInfo(info));
+        assertEquals(Arrays.asList("foo.o", "foo"),
+                     names(makefile.outOfDate(all)));
+        writeFile(info, "101\nfoo.h 1\n"
+                  + "foo.y 5\nfoo.c 35\nfoo.o 30\nfoo 40\n");
+        assertEquals(5, makefile.updateFileInfo(info));
+        assertEquals(Arrays.asList("foo.o", "foo"),
+                     names(makefile.outOfDate(all)));
+        assertEquals(101, makefile.find("foo").getLabel().getAge());
+    }
+
+    /** Replace the contents of FILE with TEXT. */
+    private static void writeFile(File file, String text) throws IOException {
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void actionCache() throws IOException {
+        File dir = File.createTempFile("make", null);
+        dir.delete();
+        dir.mkdir();
+        File in = new File(dir, "in");
+        File out = new File(dir, "out");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        dir.deleteOnExit();
+        String[][] rules = {
+            { out.getPath(), "cat " + in + " > " + out, in.getPath() },
+        };
+        ActionCache cache = new ActionCache(10);
+        writeFile(in, "one");
+        assertEquals("cat", firstWord(runWithCache(rules, cache)));
+        assertEquals("", runWithCache(rules, cache));
+        writeFile(in, "one");
+        assertEquals("", runWithCache(rules, cache));
+        writeFile(in, "two");
+        assertEquals("cat", firstWord(runWithCache(rules, cache)));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void actionCacheWithoutOutput() throws IOException {
+        File dir = File.createTempFile("make", null);
+        dir.delete();
+        dir.mkdir();
+        File in = new File(dir, "in");
+        File log = new File(dir, "log");
+        File clean = new File(dir, "clean");
+        in.deleteOnExit();
+        log.deleteOnExit();
+        dir.deleteOnExit();
+        String[][] rules = {
+            { clean.getPath(), "echo x >> " + log, in.getPath() },
+        };
+        ActionCache cache = new ActionCache(10);
+        writeFile(in, "one");
+        assertEquals("echo", firstWord(runWithCache(rules, cache)));
+        assertEquals("echo", firstWord(runWithCache(rules, cache)));
+        assertFalse(clean.exists());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    public void actionCacheEviction() throws IOException {
+        ActionCache cache = new ActionCache(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertNull(cache.get("b"));
+        File file = File.createTempFile("cache", null);
+        file.deleteOnExit();
+        cache.write(file);
+        ActionCache copy = ActionCache.read(file, 2);
+        assertEquals("1", copy.get("a"));
+        assertEquals("3", copy.get("c"));
+    }
+
+    /** Rebuild all the targets of makefile(RULES) using CACHE, treating
+     *  all files that have no rule as existing, and return the output. */
+    private static String runWithCache(String[][] rules, ActionCache cache) {
+        Makefile makefile = makefile(rules);
+        ArrayList<String> all = new ArrayList<String>();
+        for (Graph<Target, NoLabel>.Vertex v
+                 : makefile.getGraph().vertices()) {
+            if (v.getLabel().hasRule()) {
+                all.add(v.getLabel().getName());
+            } else {
+                v.getLabel().setFileAge(true, 0);
+            }
+        }
+        List<Target> stale = makefile.rebuild(all);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Scheduler scheduler =
+            new Scheduler(makefile, stale, 1, false, new BuildStats(),
+                          new PrintStream(bytes));
+        scheduler.setCache(cache);
+        assertTrue(scheduler.run());
+        return bytes.toString();
+    }
+
+    /** Returns the first word of TEXT. */
+    private static String firstWord(String text) {
+        return text.trim().split("\\s+")[0];
+    }
+
+    @Test
+    public void cyclesRejectedUpFront() throws IOException {
+        File rules = File.createTempFile("makefile", null);
+        File info = File.createTempFile("fileinfo", null);
+        rules.deleteOnExit();
+        info.deleteOnExit();
+        writeFile(rules, "A: B\n\tcmd\nC: D\nD: E F\nE: C\nF: F\n");
+        writeFile(info, "10\nB 1\n");
+        try {
+            Makefile.read(rules.getPath(), info.getPath());
+            fail("cycle not detected");
+        } catch (MakeException e) {
+            assertEquals("circular dependency among C, D, E; among F",
+                         e.getMessage());
+        }
+    }
+
+    @Test
+    public void stateStore() throws IOException {
+        File rules = File.createTempFile("makefile", null);
+        File info = File.createTempFile("fileinfo", null);
+        File state = File.createTempFile("state", null);
+        rules.deleteOnExit();
+        info.deleteOnExit();
+        state.deleteOnExit();
+        writeFile(rules, "foo: foo.o\n\tgcc -o foo foo.o\n"
+                  + "foo.o: foo.c foo.h\n\tgcc -c foo.c\n\techo done\n");
+        writeFile(info, "100\nfoo.c 50\nfoo.h 10\nfoo.o 60\nfoo 40\n");
+        state.delete();
+        assertNull(StateStore.read(state, rules, info));
+        Makefile original = Makefile.read(rules.getPath(), info.getPath());
+        StateStore.write(state, original, rules, info);
+        Makefile copy = StateStore.read(state, rules, info);
+        assertNotNull(copy);
+        assertEquals("foo", copy.getFirstTarget());
+        assertEquals(100, copy.getCurrentTime());
+        assertEquals(Arrays.asList("\tgcc -c foo.c", "\techo done"),
+                     copy.find("foo.o").getLabel().getCommands());
+        assertEquals(names(original.rebuild(Arrays.asList("foo"))),
+                     names(copy.rebuild(Arrays.asList("foo"))));
+        writeFile(info, "100\nfoo.c 50\nfoo.h 10\nfoo.o 30\nfoo 40\n");
+        assertNull(StateStore.read(state, rules, info));
+    }
+
+    @Test
+    public void generatedMakefiles() throws IOException {
+        File rules = File.createTempFile("makefile", null);
+        File info = File.createTempFile("fileinfo", null);
+        rules.deleteOnExit();
+        info.deleteOnExit();
+        ScaleTesting generator = new ScaleTesting();
+        for (String stale : new String[] { "0", "0.2", "1" }) {
+            generator.options(new String[] { "-stale", stale, "-skew", "3" },
+                              0);
+            int expected = generator.generate(1000, rules, info);
+            Makefile makefile = Makefile.read(rules.getPath(), info.getPath());
+            assertEquals(expected + 1,
+                         makefile.outOfDate(Arrays.asList("all")).size());
+        }
+        assertEquals(900, generator.generate(1000, rules, info));
+    }
+
 }
@@ -0,0 +1,159 @@
+package make;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** A resident make, which keeps the dependency graph and the change dates
+ *  of files in memory and repeats the make procedure whenever the makefile
+ *  or the fileinfo file changes.
+ *
+ *  A change to the makefile causes the whole makefile to be read again.  A
+ *  change to the fileinfo file alone causes only the decisions that depend
+ *  on the change dates that differ to be made again (see
+ *  Makefile.updateFileInfo); when nothing relevant to the requested
+ *  targets changed, a recheck visits only the targets that are out of
+ *  date.
+ *  @author Austin Gandy
+ */
+class Watcher {
+
+    /** A Watcher that makes TARGETS (or the first target, if TARGETS is
+     *  empty) from the makefile named MAKEFILENAME and the fileinfo file
+     *  named FILEINFONAME, using the state file named STATENAME, if not
+     *  null, as for Main.read, and handling JOBS, KEEPGOING, and CACHENAME
+     *  as for Main.build. */
+    Watcher(String makefileName, String fileInfoName, String stateName,
+            List<String> targets, int jobs, boolean keepGoing,
+            String cacheName) {
+        _makefileName = makefileName;
+        _fileInfoName = fileInfoName;
+        _stateName = stateName;
+        _makefilePath = path(makefileName);
+        _fileInfoPath = path(fileInfoName);
+        _targets = targets;
+        _jobs = jobs;
+        _keepGoing = keepGoing;
+        _cacheName = cacheName;
+    }
+
+    /** Make my targets, and then make them again each time my makefile or
+     *  fileinfo file changes, until interrupted. */
+    void run() throws IOException {
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        try {
+            HashSet<Path> dirs = new HashSet<Path>();
+            dirs.add(_makefilePath.getParent());
+            dirs.add(_fileInfoPath.getParent());
+            for (Path dir : dirs) {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                             StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            update(true);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean rules = false, info = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            rules = info = true;
+                            continue;
+                        }
+                        Path changed =
+                            ((Path) key.watchable())
+                            .resolve((Path) event.context());
+                        rules |= changed.equals(_makefilePath);
+                        info |= changed.equals(_fileInfoPath);
+                    }
+                    key.reset();
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (rules || info) {
+                    update(rules);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watcher.close();
+        }
+    }
+
+    /** Bring my state up to date with the fileinfo file, and with the
+     *  makefile as well if RULES or if it has not been read successfully,
+     *  and make my targets.  Errors are reported, but do not stop me. */
+    private void update(boolean rules) {
+        long start = System.nanoTime();
+        try {
+            int rechecked;
+            if (rules || _makefile == null) {
+                _makefile = null;
+                _makefile = Main.read(_makefileName, _fileInfoName,
+                                      _stateName);
+                rechecked = _makefile.getGraph().vertexSize();
+            } else {
+                rechecked =
+                    _makefile.updateFileInfo(new File(_fileInfoName));
+            }
+            List<String> targets = _targets;
+            if (targets.isEmpty()) {
+                if (_makefile.getFirstTarget() == null) {
+                    throw new MakeException("no targets");
+                }
+                targets = Arrays.asList(_makefile.getFirstTarget());
+            }
+            List<Target> stale = _makefile.outOfDate(targets);
+            Main.build(_makefile, stale, _jobs, _keepGoing, _cacheName);
+            System.out.flush();
+            System.err.printf("make: %d out of date, %d rechecked "
+                              + "in %.1f ms%n", stale.size(), rechecked,
+                              (System.nanoTime() - start) / 1e6);
+        } catch (FileNotFoundException e) {
+            System.err.printf("make: could not open %s%n", e.getMessage());
+        } catch (MakeException e) {
+            System.err.printf("make: %s%n", e.getMessage());
+        }
+    }
+
+    /** Returns the absolute path of the file named NAME. */
+    private static Path path(String name) {
+        return new File(name).toPath().toAbsolutePath().normalize();
+    }
+
+    /** Time to wait for further changes after a change, in milliseconds,
+     *  so that a burst of changes causes only one update. */
+    private static final long SETTLE_MILLIS = 50;
+
+    /** The name of the makefile. */
+    private final String _makefileName;
+    /** The name of the fileinfo file. */
+    private final String _fileInfoName;
+    /** The name of the state file, or null if there is none. */
+    private final String _stateName;
+    /** The absolute path of the makefile. */
+    private final Path _makefilePath;
+    /** The absolute path of the fileinfo file. */
+    private final Path _fileInfoPath;
+    /** The targets to make, or empty for the first target. */
+    private final List<String> _targets;
+    /** As for Main.build. */
+    private final int _jobs;
+    /** As for Main.build. */
+    private final boolean _keepGoing;
+    /** As for Main.build. */
+    private final String _cacheName;
+    /** The current state, or null if the makefile has not been read
+     *  successfully. */
+    private Makefile _makefile;
+
+}
@@ -0,0 +1,90 @@
+package trip;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/** A connection to a trip Server on the local machine.
+ *  @author Austin Gandy
+ */
+class Client implements Closeable {
+
+    /** A client of the server listening on PORT. */
+    Client(int port) throws IOException {
+        _socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        _socket.setTcpNoDelay(true);
+        _in = new BufferedReader(new InputStreamReader(
+            _socket.getInputStream(), StandardCharsets.UTF_8));
+        _out = new BufferedWriter(new OutputStreamWriter(
+            _socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /** Returns the directions for the trip in the request line LINE.
+     *  Throws MapException if the server reports an error. */
+    String trip(String line) throws IOException {
+        return request("TRIP " + line);
+    }
+
+    /** Ask the server to read its map again.  Throws MapException if the
+     *  server reports an error. */
+    void reload() throws IOException {
+        request("RELOAD");
+    }
+
+    /** Ask the server to shut down. */
+    void shutdown() throws IOException {
+        request("SHUTDOWN");
+    }
+
+    /** Close my connection. */
+    @Override
+    public void close() throws IOException {
+        _socket.close();
+    }
+
+    /** Send REQUEST to the server and return the text of its reply.
+     *  Throws MapException if the server reports an error. */
+    private String request(String request) throws IOException {
+        _out.write(request);
+        _out.write('\n');
+        _out.flush();
+        String status = _in.readLine();
+        if (status == null) {
+            throw new IOException("server closed the connection");
+        } else if (status.startsWith("ERR ")) {
+            throw new MapException("%s", status.substring(4));
+        } else if (!status.startsWith("OK ")) {
+            throw new IOException("bad reply from server: " + status);
+        }
+        int lines;
+        try {
+            lines = Integer.parseInt(status.substring(3));
+        } catch (NumberFormatException e) {
+            throw new IOException("bad reply from server: " + status);
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            String line = _in.readLine();
+            if (line == null) {
+                throw new IOException("server closed the connection");
+            }
+            text.append(line).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    /** My connection to the server. */
+    private final Socket _socket;
+    /** Replies from the server. */
+    private final BufferedReader _in;
+    /** Requests to the server. */
+    private final Writer _out;
+
+}
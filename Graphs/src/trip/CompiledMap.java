@@ -0,0 +1,411 @@
+package trip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** A map compiled into a binary file, which is mapped into memory rather
+ *  than parsed.  The file is a sequence of big-endian fields:
+ *  <pre>
+ *    int MAGIC, int VERSION, int N (places), int M (roads),
+ *    int B, byte[B] place names, int[N+1] place name offsets,
+ *    double[N] x coordinates, double[N] y coordinates,
+ *    int S, int[S] name table,
+ *    int[M] first places, int[M] second places, int[M] road names,
+ *    byte[M] directions, double[M] lengths,
+ *    int R, int D, byte[D] road name pool, int[R+1] pool offsets,
+ *    int E, int[N+1] adjacency offsets, int[E] adjacent roads.
+ *  </pre>
+ *  Places and roads are numbered in the order in which the text map
+ *  defines them.  Names are in UTF-8: the name of place #i is bytes
+ *  [offsets[i] .. offsets[i+1]-1] of the place names, and likewise for
+ *  the pool, which holds each distinct road name once.  The name table is
+ *  an open-addressed hash table (S a power of 2, linear probing, -1 for
+ *  empty slots) of place numbers, used to find places by name without
+ *  decoding the names of the others.  Directions are indices into
+ *  NS, SN, WE, EW.  The roads at place #i, in order, are adjacent roads
+ *  [offsets[i] .. offsets[i+1]-1] (compressed sparse row form).
+ *
+ *  All fields but the coordinates, which are copied into arrays, are read
+ *  in place from the mapping.  Road names are decoded from the pool when
+ *  first asked for, and then kept; place names are decoded each time.
+ *  The adjacency lists are copied out in one piece for Router, so that
+ *  it need not build the graph of the map.
+ *  @author Austin Gandy
+ */
+class CompiledMap extends MapModel {
+
+    /** Returns true iff FILE starts with the magic number of compiled
+     *  maps. */
+    static boolean isCompiled(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return in.length() >= 4 && in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Returns the compiled map in FILE.  Throws MapException if FILE is
+     *  malformed or of another version. */
+    static CompiledMap read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        MappedByteBuffer buf;
+        try {
+            if (in.length() > Integer.MAX_VALUE) {
+                throw new MapException("%s: compiled map too large", file);
+            }
+            buf = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                                      in.length());
+        } finally {
+            in.close();
+        }
+        try {
+            return new CompiledMap(buf);
+        } catch (RuntimeException e) {
+            if (e instanceof MapException) {
+                throw e;
+            }
+            throw new MapException("%s: malformed compiled map", file);
+        }
+    }
+
+    /** The compiled map held in BUF. */
+    private CompiledMap(ByteBuffer buf) {
+        _buf = buf;
+        if (buf.getInt() != MAGIC) {
+            throw new MapException("not a compiled map");
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new MapException("compiled map has version %d, not %d",
+                                   version, VERSION);
+        }
+        _placeCount = buf.getInt();
+        _roadCount = buf.getInt();
+        _placeNames = skip(buf.getInt());
+        _placeNameOffsets = ints(_placeCount + 1);
+        _xs = new double[_placeCount];
+        doubles(_placeCount).get(_xs);
+        _ys = new double[_placeCount];
+        doubles(_placeCount).get(_ys);
+        int slots = buf.getInt();
+        if (Integer.bitCount(slots) != 1) {
+            throw new MapException("bad name table");
+        }
+        _nameTable = ints(slots);
+        _firsts = ints(_roadCount);
+        _seconds = ints(_roadCount);
+        _roadNames = ints(_roadCount);
+        _directions = skip(_roadCount);
+        for (int r = 0; r < _roadCount; r += 1) {
+            int d = buf.get(_directions + r);
+            if (d < 0 || d >= MapLoader.DIRECTIONS.length) {
+                throw new MapException("bad directions");
+            }
+        }
+        _lengths = doubles(_roadCount);
+        int poolSize = buf.getInt();
+        _pool = skip(buf.getInt());
+        _poolOffsets = ints(poolSize + 1);
+        _poolNames = new String[poolSize];
+        int adjacent = buf.getInt();
+        _adjacencyOffsets = ints(_placeCount + 1);
+        _adjacent = ints(adjacent);
+        if (adjacent != 2 * _roadCount || _adjacencyOffsets.get(0) != 0
+            || _adjacencyOffsets.get(_placeCount) != adjacent) {
+            throw new MapException("bad adjacency lists");
+        }
+    }
+
+    /** Returns the position of the next COUNT bytes of _buf, and skips
+     *  them. */
+    private int skip(int count) {
+        int result = _buf.position();
+        _buf.position(result + count);
+        return result;
+    }
+
+    /** Returns a view of the next COUNT ints of _buf, and skips them. */
+    private IntBuffer ints(int count) {
+        IntBuffer result = _buf.asIntBuffer();
+        result.limit(count);
+        skip(4 * count);
+        return result;
+    }
+
+    /** Returns a view of the next COUNT doubles of _buf, and skips
+     *  them. */
+    private DoubleBuffer doubles(int count) {
+        DoubleBuffer result = _buf.asDoubleBuffer();
+        result.limit(count);
+        skip(8 * count);
+        return result;
+    }
+
+    @Override
+    int placeCount() {
+        return _placeCount;
+    }
+
+    @Override
+    int roadCount() {
+        return _roadCount;
+    }
+
+    @Override
+    String placeName(int id) {
+        int start = _placeNameOffsets.get(id);
+        return text(_placeNames + start,
+                    _placeNameOffsets.get(id + 1) - start);
+    }
+
+    @Override
+    double placeX(int id) {
+        return _xs[id];
+    }
+
+    @Override
+    double placeY(int id) {
+        return _ys[id];
+    }
+
+    @Override
+    String roadName(int index) {
+        int k = _roadNames.get(index);
+        String name = _poolNames[k];
+        if (name == null) {
+            int start = _poolOffsets.get(k);
+            name = text(_pool + start, _poolOffsets.get(k + 1) - start);
+            _poolNames[k] = name;
+        }
+        return name;
+    }
+
+    @Override
+    int roadDirections(int index) {
+        return _buf.get(_directions + index);
+    }
+
+    @Override
+    double roadLength(int index) {
+        return _lengths.get(index);
+    }
+
+    @Override
+    int firstPlace(int index) {
+        return _firsts.get(index);
+    }
+
+    @Override
+    int secondPlace(int index) {
+        return _seconds.get(index);
+    }
+
+    @Override
+    int placeId(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        int mask = _nameTable.limit() - 1;
+        for (int slot = hash(bytes) & mask; _nameTable.get(slot) >= 0;
+             slot = (slot + 1) & mask) {
+            int id = _nameTable.get(slot);
+            int start = _placeNameOffsets.get(id);
+            if (_placeNameOffsets.get(id + 1) - start == bytes.length
+                && equal(_placeNames + start, bytes)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    int[] adjacencyOffsets() {
+        int[] result = new int[_placeCount + 1];
+        _adjacencyOffsets.duplicate().get(result);
+        return result;
+    }
+
+    @Override
+    int[] adjacentRoads() {
+        int[] result = new int[_adjacent.limit()];
+        _adjacent.duplicate().get(result);
+        return result;
+    }
+
+    /** Returns the LENGTH bytes of _buf at POSITION as a String. */
+    private String text(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i += 1) {
+            bytes[i] = _buf.get(position + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    /** Returns true iff the bytes of _buf at POSITION start with
+     *  BYTES. */
+    private boolean equal(int position, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (_buf.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the hash of BYTES used in the name table. */
+    private static int hash(byte[] bytes) {
+        int h = 0;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** Write the map in SOURCE to FILE in compiled form.  The file is
+     *  written under another name and then renamed, so that readers never
+     *  see a partial file. */
+    static void write(File file, MapModel source) throws IOException {
+        int n = source.placeCount();
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        int[] nameOffsets = new int[n + 1];
+        int slots = Integer.highestOneBit(Math.max(n, 1)) * 4;
+        int[] nameTable = new int[slots];
+        Arrays.fill(nameTable, -1);
+        for (int i = 0; i < n; i += 1) {
+            byte[] bytes = source.placeName(i).getBytes(UTF8);
+            names.write(bytes);
+            nameOffsets[i + 1] = names.size();
+            int slot = hash(bytes) & (slots - 1);
+            while (nameTable[slot] >= 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            nameTable[slot] = i;
+        }
+
+        int m = source.roadCount();
+        HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        ArrayList<Integer> poolOffsets = new ArrayList<Integer>();
+        poolOffsets.add(0);
+        int[] roadNames = new int[m];
+        for (int r = 0; r < m; r += 1) {
+            String name = source.roadName(r);
+            Integer k = poolIndex.get(name);
+            if (k == null) {
+                k = poolIndex.size();
+                poolIndex.put(name, k);
+                pool.write(name.getBytes(UTF8));
+                poolOffsets.add(pool.size());
+            }
+            roadNames[r] = k;
+        }
+        int[] adjacencyOffsets = source.adjacencyOffsets();
+        int[] adjacent = source.adjacentRoads();
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(m);
+            out.writeInt(names.size());
+            names.writeTo(out);
+            for (int offset : nameOffsets) {
+                out.writeInt(offset);
+            }
+            for (int i = 0; i < n; i += 1) {
+                out.writeDouble(source.placeX(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                out.writeDouble(source.placeY(i));
+            }
+            out.writeInt(slots);
+            for (int id : nameTable) {
+                out.writeInt(id);
+            }
+            for (int r = 0; r < m; r += 1) {
+                out.writeInt(source.firstPlace(r));
+            }
+            for (int r = 0; r < m; r += 1) {
+                out.writeInt(source.secondPlace(r));
+            }
+            for (int k : roadNames) {
+                out.writeInt(k);
+            }
+            for (int r = 0; r < m; r += 1) {
+                out.writeByte(source.roadDirections(r));
+            }
+            for (int r = 0; r < m; r += 1) {
+                out.writeDouble(source.roadLength(r));
+            }
+            out.writeInt(poolIndex.size());
+            out.writeInt(pool.size());
+            pool.writeTo(out);
+            for (int offset : poolOffsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(adjacent.length);
+            for (int offset : adjacencyOffsets) {
+                out.writeInt(offset);
+            }
+            for (int r : adjacent) {
+                out.writeInt(r);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("could not write " + file);
+            }
+        }
+    }
+
+    /** Identifies compiled maps ("TRPM"). */
+    static final int MAGIC = 0x5452504d;
+    /** Version of the format. */
+    static final int VERSION = 1;
+    /** Encoding of names. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The mapped file. */
+    private final ByteBuffer _buf;
+    /** Numbers of places and of roads. */
+    private final int _placeCount, _roadCount;
+    /** Positions in _buf of the place names, the road name pool, and the
+     *  directions. */
+    private final int _placeNames, _pool, _directions;
+    /** Offsets of the place names and of the names in the pool. */
+    private final IntBuffer _placeNameOffsets, _poolOffsets;
+    /** The names in the pool, each null until first decoded. */
+    private final String[] _poolNames;
+    /** Coordinates of the places. */
+    private final double[] _xs, _ys;
+    /** The name table. */
+    private final IntBuffer _nameTable;
+    /** The places each road connects, and the index in the pool of its
+     *  name. */
+    private final IntBuffer _firsts, _seconds, _roadNames;
+    /** Lengths of the roads. */
+    private final DoubleBuffer _lengths;
+    /** The roads at each place, in compressed sparse row form. */
+    private final IntBuffer _adjacencyOffsets, _adjacent;
+
+}
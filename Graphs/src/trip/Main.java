@@ -1,17 +1,22 @@
 package trip;
 
-import graph.UndirectedGraph;
-import graph.Graph;
-import graph.Graphs;
-
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /** Initial class for the 'trip' program.
  *  @author Austin Gandy
@@ -20,15 +25,43 @@ public final class Main {
 
     /** Entry point for the CS61B trip program.  ARGS may contain options
      *  and targets:
-     *      [ -m MAP ] [ -o OUT ] [ REQUEST ]
+     *      [ -m MAP ] [ -o OUT ] [ -b ] [ -O ] [ -j JOBS ]
+     *          [ -s PORT | -c PORT ] [ REQUEST ]
      *  where MAP (default Map) contains the map data, OUT (default standard
      *  output) takes the result, and REQUEST (default standard input) contains
-     *  the locations along the requested trip.
+     *  the locations along the requested trip.  A location may be given
+     *  by coordinates, as @X:Y, for the place nearest to (X, Y).  MAP may
+     *  be a text map or a compiled map, which is produced from a text map
+     *  by
+     *      compile TEXTMAP COMPILEDMAP
+     *  and is read much faster.  With -b (batch mode), all request lines
+     *  are read first, and the legs of all the trips are found on JOBS
+     *  threads at once (by default, one per processor); the output is the
+     *  same as without -b.  With -s PORT, the program instead reads MAP
+     *  once and serves trip requests from the local machine on PORT, on
+     *  JOBS threads, until asked to shut down (see Server).  With -c PORT,
+     *  the trips are found by the server on PORT rather than from MAP,
+     *  with the same output.  With -O, the places of each request after
+     *  the first are visited in an order chosen to make the trip short
+     *  (see TripPlanner), rather than in the order given; a trip that
+     *  returns to its start still does.  -O may not be used with -s or
+     *  -c.
      */
     public static void main(String... args) {
+        if (args.length > 0 && args[0].equals("compile")) {
+            if (args.length != 3) {
+                usage();
+            }
+            compile(args[1], args[2]);
+            return;
+        }
         String mapFileName = "Map";
         String out = null;
         String requestFileName = null;
+        boolean batch = false;
+        boolean optimize = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int serverPort = -1, clientPort = -1;
         int a;
         for (a = 0; a < args.length; a += 1) {
             if (args[a].equals("-m")) {
@@ -45,6 +78,26 @@ public final class Main {
                 } else {
                     out = args[a];
                 }
+            } else if (args[a].equals("-b")) {
+                batch = true;
+            } else if (args[a].equals("-O")) {
+                optimize = true;
+            } else if (args[a].equals("-j")) {
+                a += 1;
+                if (a == args.length) {
+                    usage();
+                } else {
+                    jobs = parseJobs(args[a]);
+                }
+            } else if (args[a].equals("-s") || args[a].equals("-c")) {
+                a += 1;
+                if (a == args.length) {
+                    usage();
+                } else if (args[a - 1].equals("-s")) {
+                    serverPort = parsePort(args[a]);
+                } else {
+                    clientPort = parsePort(args[a]);
+                }
             } else if (args[a].startsWith("-")) {
                 usage();
             } else {
@@ -56,6 +109,16 @@ public final class Main {
         } else if (a > args.length) {
             usage();
         }
+        if (serverPort >= 0) {
+            if (clientPort >= 0 || batch || optimize) {
+                usage();
+            }
+            serve(mapFileName, serverPort, jobs);
+            return;
+        }
+        if (clientPort >= 0 && optimize) {
+            usage();
+        }
         if (requestFileName != null) {
             try {
                 System.setIn(new FileInputStream(requestFileName));
@@ -72,133 +135,261 @@ public final class Main {
                 System.exit(1);
             }
         }
-        addDirection();
+        ExecutorService planners =
+            optimize ? Executors.newFixedThreadPool(jobs) : null;
+        try {
+            if (clientPort >= 0) {
+                client(clientPort);
+            } else if (batch) {
+                batch(mapFileName, jobs, planners);
+            } else {
+                Scanner in = new Scanner(System.in);
+                while (true) {
+                    String line = in.nextLine();
+                    if (line.replace(",", "").equals("EOF")) {
+                        break;
+                    }
+                    trip(mapFileName, Router.places(line), planners);
+                }
+                in.close();
+            }
+        } catch (MapException e) {
+            System.out.flush();
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } finally {
+            if (planners != null) {
+                planners.shutdownNow();
+            }
+        }
+    }
+
+    /** Returns the number of jobs given by the argument of -j, TEXT. */
+    private static int parseJobs(String text) {
+        try {
+            int jobs = Integer.parseInt(text);
+            if (jobs > 0) {
+                return jobs;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through to usage. */
+        }
+        usage();
+        return 0;
+    }
+
+    /** Returns the port number given by the argument of -s or -c,
+     *  TEXT. */
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            if (port >= 0 && port <= MAX_PORT) {
+                return port;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through to usage. */
+        }
+        usage();
+        return 0;
+    }
+
+    /** Serve trip requests on PORT on up to JOBS threads, using the map
+     *  data in MAPFILENAME, until shut down by a client or by
+     *  termination of the program, finishing the requests in progress
+     *  in either case. */
+    private static void serve(String mapFileName, int port, int jobs) {
+        final Server server;
+        try {
+            server = new Server(new File(mapFileName), port, jobs);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            usage();
+            return;
+        } catch (MapException e) {
+            System.err.println(e.getMessage());
+            usage();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.shutdown();
+                try {
+                    server.awaitTermination();
+                } catch (InterruptedException e) {
+                    /* Give up waiting: the program is ending anyway. */
+                }
+            }
+        });
+        System.err.printf("Serving %s on port %d.%n", mapFileName,
+                          server.getPort());
+        server.serve();
+    }
+
+    /** Print the trips for all the requests on the standard input to the
+     *  standard output, in order, as found by the server on PORT. */
+    private static void client(int port) {
+        try {
+            Client server = new Client(port);
+            try {
+                Scanner in = new Scanner(System.in);
+                while (in.hasNextLine()) {
+                    String line = in.nextLine();
+                    if (line.replace(",", "").equals("EOF")) {
+                        break;
+                    }
+                    System.out.print(server.trip(line));
+                }
+                in.close();
+            } finally {
+                server.close();
+            }
+        } catch (IOException e) {
+            System.err.printf("Could not reach server on port %d: %s.%n",
+                              port, e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Print the trips for all the requests on the standard input to the
+     *  standard output, in order, using the map data in MAPFILENAME and
+     *  finding up to JOBS legs at once.  If PLANNERS is not null, the
+     *  places of each request are first reordered as for plan, using
+     *  PLANNERS. */
+    private static void batch(String mapFileName, int jobs,
+                              ExecutorService planners) {
+        ArrayList<String[]> requests = new ArrayList<String[]>();
         Scanner in = new Scanner(System.in);
-        while (true) {
-            String line = in.nextLine().replace(",", "");
-            if (line.equals("EOF")) {
+        while (in.hasNextLine()) {
+            String line = in.nextLine();
+            if (line.replace(",", "").equals("EOF")) {
                 break;
             }
-            String[] dest = line.split("\\s+");
-            trip(mapFileName, dest);
+            requests.add(Router.places(line));
         }
         in.close();
+        makeMap(mapFileName);
+        _mapMade = true;
+        final Router router = _router;
+        ArrayList<String> legs = new ArrayList<String>();
+        for (String[] request : requests) {
+            String[] dest = plan(request, planners);
+            for (int i = 0; i < dest.length - 1; i += 1) {
+                legs.add(dest[i]);
+                legs.add(dest[i + 1]);
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        Writer out =
+            new BufferedWriter(new OutputStreamWriter(System.out), OUT_BUFFER);
+        try {
+            for (int i = 0; i < legs.size(); i += 2) {
+                if (pending.size() == BATCH_WINDOW * jobs) {
+                    out.write(pending.remove().get());
+                }
+                final String from = legs.get(i), to = legs.get(i + 1);
+                pending.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return router.leg(from, to);
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.remove().get());
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.printf("Could not write output: %s.%n",
+                              e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                try {
+                    out.flush();
+                } catch (IOException flushError) {
+                    /* Report the original error. */
+                }
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
-    /** adds directions to _directions. */
-    private static void addDirection() {
-        _directions.add("NS");
-        _directions.add("SN");
-        _directions.add("WE");
-        _directions.add("EW");
+    /** Compile the text map in the file TEXTNAME into the file
+     *  COMPILEDNAME. */
+    private static void compile(String textName, String compiledName) {
+        try {
+            CompiledMap.write(new File(compiledName),
+                              MapLoader.read(new File(textName),
+                                             Runtime.getRuntime()
+                                             .availableProcessors()));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            usage();
+        } catch (MapException e) {
+            System.err.println(e.getMessage());
+            usage();
+        }
     }
+
     /** Creates a graph representing the map the user specifies in the file
-     *  MAPFILENAME. */
+     *  MAPFILENAME, which may be a text map or a compiled map. */
     private static void makeMap(String mapFileName) {
         try {
-            Scanner mapScanner = new Scanner(new File(mapFileName));
-            _map = new UndirectedGraph<Place, Road>();
-            mapScanner.useDelimiter("\\r?\\n");
-            String line;
-            Place currentPlace;
-            Road currentRoad;
-            Graph<Place, Road>.Vertex placeVertex;
-            _places = new HashMap<String, Graph<Place, Road>.Vertex>();
-            if (!mapScanner.hasNextLine()) {
-                mapScanner.close();
-                return;
-            }
-            while (mapScanner.hasNextLine()) {
-                line = mapScanner.nextLine();
-                String[] words = line.split("\\s");
-                if (words.length == 1 && words[0].equals("")) {
-                    continue;
-                }
-                if (words[0].equals("L") && words.length == 4
-                        && !_places.containsKey(words[1])) {
-                    currentPlace = new Place(words[1],
-                               Double.parseDouble(words[2]),
-                               Double.parseDouble(words[3]));
-                    placeVertex = _map.add(currentPlace);
-                    _places.put(words[1], placeVertex);
-                } else if (words[0].equals("R") && words.length == 6
-                        && _places.containsKey(words[1])
-                        && _places.containsKey(words[5])
-                        && _directions.contains(words[4])) {
-                    currentRoad = new Road(words[2], words[4],
-                            _places.get(words[5]), _places.get(words[1]),
-                            Double.parseDouble(words[3]));
-                    _map.add(_places.get(words[1]), _places.get(words[5]),
-                            currentRoad);
-                } else {
-                    usage();
-                }
-            }
-            mapScanner.close();
-        } catch (FileNotFoundException  e) {
+            _router = Router.read(new File(mapFileName),
+                                  Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
             usage();
-        } catch (NumberFormatException e) {
+        } catch (MapException e) {
+            System.err.println(e.getMessage());
             usage();
         }
     }
 
+    /** Returns the places DEST of a request, reordered to make a short
+     *  trip using PLANNERS if PLANNERS is not null, and otherwise as
+     *  given. */
+    private static String[] plan(String[] dest, ExecutorService planners) {
+        if (planners == null) {
+            return dest;
+        }
+        return _router.plan(dest, planners, PLAN_BUDGET);
+    }
+
     /** Print a trip for the request on the standard input to the standard
-     *  output, using the map data in MAPFILENAME. Also takes in DEST.
+     *  output, using the map data in MAPFILENAME. Also takes in DEST,
+     *  which is reordered first as for plan, using PLANNERS.  The
+     *  directions are written, and the output flushed, once per request,
+     *  including the legs found before any error.
      */
-    private static void trip(String mapFileName, String[] dest) {
+    private static void trip(String mapFileName, String[] dest,
+                             ExecutorService planners) {
         if (!_mapMade) {
             makeMap(mapFileName);
             _mapMade = true;
         }
-        ArrayList<Graph<Place, Road>.Edge> whereTo =
-                new ArrayList<Graph<Place, Road>.Edge>();
-        for (int i = 0; i < dest.length - 1; i += 1) {
-            whereTo = (ArrayList<Graph<Place, Road>.Edge>)
-                    Graphs.shortestPath(_map, _places.get(dest[i]),
-                            _places.get(dest[i + 1]), new EuclidDistancer());
-            int num = 1;
-            Graph<Place, Road>.Vertex comingFrom = _places.get(dest[i]);
-            Road road;
-            Road lastRoad = null;
-            String lastRoadName = null;
-            String lastRoadDirection = null;
-            Double currentDistance = 0.0;
-            System.out.println("From " + comingFrom.getLabel().getName() + ":");
-            System.out.println();
-            String roadDirection = "";
-            boolean firstTime = true;
-            for (Graph<Place, Road>.Edge edge : whereTo) {
-                road = edge.getLabel();
-                if (lastRoad != null) {
-                    roadDirection = lastRoad.getWayTo();
-                }
-                if (lastRoadName != null && lastRoadName.equals(road.getName())
-                        && lastRoadDirection != null
-                        && lastRoadDirection.equals(roadDirection)
-                        && !firstTime) {
-                    currentDistance += road.getDistance();
-                    comingFrom = edge.getV(comingFrom);
-                    lastRoadName = road.getName();
-                    lastRoadName = road.getName();
-                    lastRoad = road;
-                    continue;
-                } else if (!firstTime) {
-                    System.out.println((double) Math.round(
-                           currentDistance * 10) / 10 + " miles.");
-                }
-                System.out.print(num + ". Take " + road.getName() + " "
-                        + road.getDirection(comingFrom.getLabel()) + " for ");
-                currentDistance = road.getDistance();
-                comingFrom = edge.getV(comingFrom);
-                lastRoadDirection = road.getWayTo();
-                lastRoadName = road.getName();
-                firstTime = false;
-                num += 1;
-                lastRoad = road;
-            }
-            System.out.println((double) Math.round(currentDistance * 10)
-                    / 10 + " miles to " + dest[i + 1]);
-            System.out.println();
+        dest = plan(dest, planners);
+        if (_out == null) {
+            _out = new BufferedWriter(new OutputStreamWriter(System.out),
+                                      OUT_BUFFER);
+        }
+        try {
+            _router.trip(dest, _renderer);
+        } finally {
+            try {
+                _renderer.writeTo(_out);
+                _out.flush();
+            } catch (IOException e) {
+                System.err.printf("Could not write output: %s.%n",
+                                  e.getMessage());
+                System.exit(1);
+            }
         }
     }
 
@@ -212,11 +403,20 @@ public final class Main {
 
     /** True if the map for this running of the program has been made. */
     private static boolean _mapMade;
-    /** list of cardinal direction pairs. */
-    private static ArrayList<String> _directions = new ArrayList<String>();
-    /** Graph that the user builds. */
-    private static Graph<Place, Road> _map;
-    /** maps place names to vertices on _map. */
-    private static HashMap<String, Graph<Place, Road>.Vertex> _places;
+    /** finds and describes trips on the map. */
+    private static Router _router;
+    /** Holds the directions for one request until they are written. */
+    private static final RouteRenderer _renderer = new RouteRenderer();
+    /** The standard output, buffered, once a trip has been printed. */
+    private static Writer _out;
+    /** Number of legs per job that may be found ahead of the output. */
+    private static final int BATCH_WINDOW = 64;
+    /** Size of the output buffer. */
+    private static final int OUT_BUFFER = 1 << 16;
+    /** Time allowed for improving the order of the places of one request
+     *  under -O, in nanoseconds. */
+    private static final long PLAN_BUDGET = 250 * 1000000L;
+    /** Largest port number. */
+    private static final int MAX_PORT = 65535;
 
 }
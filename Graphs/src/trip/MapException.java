@@ -0,0 +1,14 @@
+package trip;
+
+/** An unchecked exception that reports an error in a map file.
+ *  @author Austin Gandy
+ */
+class MapException extends RuntimeException {
+
+    /** A MapException whose message is formed from FORMAT and ARGS as
+     *  for String.format. */
+    MapException(String format, Object... args) {
+        super(String.format(format, args));
+    }
+
+}
@@ -0,0 +1,580 @@
+package trip;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Reads map files.  A map file contains lines of the forms
+ *  <pre>
+ *      L NAME X Y
+ *      R PLACE1 ROAD LENGTH DIRECTIONS PLACE2
+ *  </pre>
+ *  and blank lines.  L lines define places, each of which must be defined
+ *  once; R lines define roads between places defined on earlier lines,
+ *  where DIRECTIONS is NS, SN, WE, or EW.
+ *
+ *  The file is read through a FileChannel in chunks of about MAX_CHUNK
+ *  bytes at most that end at line boundaries.  Chunks are parsed in
+ *  parallel by a hand-written tokenizer working directly on bytes, which
+ *  converts numbers with a fast decimal conversion; one thread adds the
+ *  places and roads of each chunk to the model as soon as it and the
+ *  chunks before it are parsed, in the order of their lines in the file,
+ *  so that the result does not depend on the number of threads.  At most
+ *  one chunk per thread is parsed ahead of the one being added, so that
+ *  a large file is never held in memory all at once.
+ *
+ *  The model is kept in arrays.  Each distinct road name is stored once,
+ *  in a pool, and roads refer to it by number.  Places are found by name
+ *  through an open-addressed hash table of place numbers.
+ *  @author Austin Gandy
+ */
+class MapLoader extends MapModel {
+
+    /** Returns the map read from FILE, using up to THREADS threads.
+     *  Throws MapException if FILE is malformed. */
+    static MapLoader read(File file, int threads) throws IOException {
+        MapLoader result = new MapLoader();
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            result.parse(file, channel, chunkBounds(channel, threads),
+                         threads);
+            result.trim();
+        } finally {
+            stream.close();
+        }
+        return result;
+    }
+
+    @Override
+    int placeCount() {
+        return _placeCount;
+    }
+
+    @Override
+    int roadCount() {
+        return _roadCount;
+    }
+
+    @Override
+    String placeName(int id) {
+        return _placeNames[id];
+    }
+
+    @Override
+    double placeX(int id) {
+        return _xs[id];
+    }
+
+    @Override
+    double placeY(int id) {
+        return _ys[id];
+    }
+
+    @Override
+    int placeId(String name) {
+        int mask = _nameTable.length - 1;
+        for (int slot = hash(name) & mask; _nameTable[slot] >= 0;
+             slot = (slot + 1) & mask) {
+            if (_placeNames[_nameTable[slot]].equals(name)) {
+                return _nameTable[slot];
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    String roadName(int index) {
+        return _pool.get(_roadNames[index]);
+    }
+
+    @Override
+    int roadDirections(int index) {
+        return _directions[index];
+    }
+
+    @Override
+    double roadLength(int index) {
+        return _lengths[index];
+    }
+
+    @Override
+    int firstPlace(int index) {
+        return _firsts[index];
+    }
+
+    @Override
+    int secondPlace(int index) {
+        return _seconds[index];
+    }
+
+    /** Add the places and roads in CHUNK, which starts at line LINE + 1 of
+     *  FILE, to the map. */
+    private void link(File file, Chunk chunk, int line) {
+        for (Record record : chunk._records) {
+            if (record._name != null) {
+                if (placeId(record._name) >= 0) {
+                    throw error(file, line + record._line,
+                                "place %s defined twice", record._name);
+                }
+                addPlace(record._name, record._x, record._y);
+            } else {
+                int p0 = placeId(record._from), p1 = placeId(record._to);
+                if (p0 < 0 || p1 < 0) {
+                    throw error(file, line + record._line, "unknown place %s",
+                                p0 < 0 ? record._from : record._to);
+                }
+                addRoad(p0, p1, record._road, record._directions,
+                        record._length);
+            }
+        }
+        if (chunk._error != null) {
+            throw error(file, line + chunk._errorLine, "%s", chunk._error);
+        }
+    }
+
+    /** Add a place named NAME at (X, Y). */
+    private void addPlace(String name, double x, double y) {
+        if (_placeCount == _placeNames.length) {
+            int size = 2 * _placeCount;
+            _placeNames = Arrays.copyOf(_placeNames, size);
+            _xs = Arrays.copyOf(_xs, size);
+            _ys = Arrays.copyOf(_ys, size);
+        }
+        if (2 * (_placeCount + 1) > _nameTable.length) {
+            _nameTable = emptyTable(2 * _nameTable.length);
+            for (int id = 0; id < _placeCount; id += 1) {
+                enter(id);
+            }
+        }
+        _placeNames[_placeCount] = name;
+        _xs[_placeCount] = x;
+        _ys[_placeCount] = y;
+        enter(_placeCount);
+        _placeCount += 1;
+    }
+
+    /** Add place #ID to the name table. */
+    private void enter(int id) {
+        int mask = _nameTable.length - 1;
+        int slot = hash(_placeNames[id]) & mask;
+        while (_nameTable[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        _nameTable[slot] = id;
+    }
+
+    /** Add a road named NAME from place #FIRST to place #SECOND, with
+     *  direction pair #DIRECTIONS and length LENGTH. */
+    private void addRoad(int first, int second, String name,
+                         int directions, double length) {
+        if (_roadCount == _firsts.length) {
+            int size = 2 * _roadCount;
+            _firsts = Arrays.copyOf(_firsts, size);
+            _seconds = Arrays.copyOf(_seconds, size);
+            _roadNames = Arrays.copyOf(_roadNames, size);
+            _directions = Arrays.copyOf(_directions, size);
+            _lengths = Arrays.copyOf(_lengths, size);
+        }
+        Integer k = _poolIndex.get(name);
+        if (k == null) {
+            k = _pool.size();
+            _pool.add(name);
+            _poolIndex.put(name, k);
+        }
+        _firsts[_roadCount] = first;
+        _seconds[_roadCount] = second;
+        _roadNames[_roadCount] = k;
+        _directions[_roadCount] = (byte) directions;
+        _lengths[_roadCount] = length;
+        _roadCount += 1;
+    }
+
+    /** Shrink my arrays to fit, and discard the index of the pool. */
+    private void trim() {
+        _placeNames = Arrays.copyOf(_placeNames, _placeCount);
+        _xs = Arrays.copyOf(_xs, _placeCount);
+        _ys = Arrays.copyOf(_ys, _placeCount);
+        _firsts = Arrays.copyOf(_firsts, _roadCount);
+        _seconds = Arrays.copyOf(_seconds, _roadCount);
+        _roadNames = Arrays.copyOf(_roadNames, _roadCount);
+        _directions = Arrays.copyOf(_directions, _roadCount);
+        _lengths = Arrays.copyOf(_lengths, _roadCount);
+        _pool.trimToSize();
+        _poolIndex = null;
+    }
+
+    /** Returns an empty name table of SIZE slots. */
+    private static int[] emptyTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    /** Returns the hash of NAME used in the name table. */
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns an exception for an error described by FORMAT and ARGS,
+     *  as for String.format, on line LINE of FILE. */
+    private static MapException error(File file, int line, String format,
+                                      Object... args) {
+        return new MapException("%s:%d: %s", file, line,
+                                String.format(format, args));
+    }
+
+    /** Returns the boundaries of the chunks in which to read CHANNEL
+     *  with THREADS threads: chunk #k is bytes [BOUNDS[k] .. BOUNDS[k+1]-1],
+     *  and each chunk but the last ends with a newline.  There are enough
+     *  chunks that none is much larger than MAX_CHUNK, whatever THREADS
+     *  is, and at least one per thread if that leaves them no smaller than
+     *  MIN_CHUNK. */
+    private static long[] chunkBounds(FileChannel channel, int threads)
+        throws IOException {
+        long size = channel.size();
+        int n = (int) (size / MAX_CHUNK + 1);
+        if (threads > 1 && size >= 2 * MIN_CHUNK) {
+            n = (int) Math.max(n, Math.min(size / MIN_CHUNK, threads));
+        }
+        long[] bounds = new long[n + 1];
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        for (int k = 1; k < n; k += 1) {
+            long pos = Math.max(bounds[k - 1], size / n * k);
+            bounds[k] = size;
+            window.clear();
+            while (pos < size && channel.read(window, pos) > 0) {
+                window.flip();
+                int i = indexOf(window.array(), NEWLINE, 0, window.limit());
+                if (i < window.limit()) {
+                    bounds[k] = pos + i + 1;
+                    break;
+                }
+                pos += window.limit();
+                window.clear();
+            }
+        }
+        bounds[n] = size;
+        return bounds;
+    }
+
+    /** Parse the chunks of CHANNEL delimited by BOUNDS, using up to
+     *  THREADS threads, and add their places and roads, from lines of
+     *  FILE, to the map in order.  With one thread, or one chunk, each
+     *  chunk is parsed and added before the next is read. */
+    private void parse(File file, FileChannel channel, long[] bounds,
+                       int threads) throws IOException {
+        int n = bounds.length - 1;
+        int line = 0;
+        if (threads == 1 || n == 1) {
+            for (int k = 0; k < n; k += 1) {
+                Chunk chunk =
+                    new Chunk(channel, bounds[k], bounds[k + 1]).call();
+                link(file, chunk, line);
+                line += chunk._lines;
+            }
+            return;
+        }
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(threads, n));
+        try {
+            ArrayDeque<Future<Chunk>> pending =
+                new ArrayDeque<Future<Chunk>>();
+            for (int k = 0; k < n || !pending.isEmpty(); ) {
+                while (k < n && pending.size() < threads) {
+                    pending.add(pool.submit(new Chunk(channel, bounds[k],
+                                                      bounds[k + 1])));
+                    k += 1;
+                }
+                Chunk chunk = pending.remove().get();
+                link(file, chunk, line);
+                line += chunk._lines;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading map");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Returns the index of the first B in BUF[START .. END-1], or END if
+     *  there is none. */
+    private static int indexOf(byte[] buf, byte b, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /** Returns the value of the decimal number in BUF[START .. END-1], as
+     *  for Double.parseDouble.  Numbers consisting of an optional sign and
+     *  digits with an optional decimal point, having at most 2**53 as
+     *  significand and at most 22 digits after the point, are converted
+     *  directly (a single division of two exactly representable values,
+     *  which is correctly rounded); all others are left to
+     *  Double.parseDouble. */
+    static double parseDouble(byte[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i += 1;
+        }
+        long significand = 0;
+        int scale = 0;
+        boolean point = false, digits = false;
+        for (; i < end; i += 1) {
+            int b = buf[i];
+            if (b >= '0' && b <= '9') {
+                significand = 10 * significand + (b - '0');
+                digits = true;
+                if (point) {
+                    scale += 1;
+                }
+                if (significand > MAX_EXACT || scale >= POWERS_OF_10.length) {
+                    break;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end || !digits) {
+            return Double.parseDouble(new String(buf, start, end - start,
+                                                 ASCII));
+        }
+        double value = significand / POWERS_OF_10[scale];
+        return negative ? -value : value;
+    }
+
+    /** A line of a map file. */
+    private static class Record {
+        /** For an L line, the name of the place it defines; otherwise
+         *  null. */
+        private String _name;
+        /** For an L line, the coordinates of the place. */
+        private double _x, _y;
+        /** For an R line, the names of the places it connects. */
+        private String _from, _to;
+        /** For an R line, the name of the road. */
+        private String _road;
+        /** For an R line, the index of its DIRECTIONS field in
+         *  DIRECTIONS. */
+        private int _directions;
+        /** For an R line, the length of the road. */
+        private double _length;
+        /** The line number, counting from 1 within its chunk. */
+        private int _line;
+    }
+
+    /** A part of a map file, ending at a line boundary, and the records
+     *  parsed from it. */
+    private static class Chunk implements Callable<Chunk> {
+
+        /** A chunk consisting of bytes START .. END-1 of CHANNEL. */
+        Chunk(FileChannel channel, long start, long end) {
+            _channel = channel;
+            _start = start;
+            _end = end;
+        }
+
+        /** Read and parse me.  Returns me. */
+        @Override
+        public Chunk call() throws IOException {
+            int size = (int) (_end - _start);
+            byte[] buf = new byte[size];
+            ByteBuffer wrapper = ByteBuffer.wrap(buf);
+            while (wrapper.hasRemaining()) {
+                if (_channel.read(wrapper, _start + wrapper.position()) < 0) {
+                    throw new IOException("map file changed while reading");
+                }
+            }
+            int[] starts = new int[MAX_FIELDS], ends = new int[MAX_FIELDS];
+            for (int pos = 0; pos < size && _error == null; ) {
+                int eol = indexOf(buf, NEWLINE, pos, size);
+                _lines += 1;
+                int n = 0;
+                for (int i = pos; i < eol; ) {
+                    while (i < eol && isSpace(buf[i])) {
+                        i += 1;
+                    }
+                    if (i == eol) {
+                        break;
+                    }
+                    if (n == MAX_FIELDS) {
+                        n += 1;
+                        break;
+                    }
+                    starts[n] = i;
+                    while (i < eol && !isSpace(buf[i])) {
+                        i += 1;
+                    }
+                    ends[n] = i;
+                    n += 1;
+                }
+                pos = eol + 1;
+                if (n == 0) {
+                    continue;
+                }
+                try {
+                    parseLine(buf, starts, ends, n);
+                } catch (NumberFormatException e) {
+                    _error = "bad number";
+                }
+                if (_error != null) {
+                    _errorLine = _lines;
+                }
+            }
+            return this;
+        }
+
+        /** Add the record in the N fields BUF[STARTS[i] .. ENDS[i]-1] of a
+         *  line, or set _error if they do not form a record. */
+        private void parseLine(byte[] buf, int[] starts, int[] ends, int n) {
+            byte kind = ends[0] - starts[0] == 1 ? buf[starts[0]] : 0;
+            Record record = new Record();
+            record._line = _lines;
+            if (kind == 'L' && n == 4) {
+                record._name = text(buf, starts[1], ends[1]);
+                record._x = parseDouble(buf, starts[2], ends[2]);
+                record._y = parseDouble(buf, starts[3], ends[3]);
+            } else if (kind == 'R' && n == 6) {
+                record._directions = directions(buf, starts[4], ends[4]);
+                if (record._directions < 0) {
+                    _error = "bad directions";
+                    return;
+                }
+                record._from = text(buf, starts[1], ends[1]);
+                record._road = text(buf, starts[2], ends[2]);
+                record._length = parseDouble(buf, starts[3], ends[3]);
+                record._to = text(buf, starts[5], ends[5]);
+                String road = _roadNames.get(record._road);
+                if (road == null) {
+                    _roadNames.put(record._road, record._road);
+                } else {
+                    record._road = road;
+                }
+            } else {
+                _error = "malformed line";
+                return;
+            }
+            _records.add(record);
+        }
+
+        /** Returns the index in DIRECTIONS of the direction pair in
+         *  BUF[START .. END-1], or -1 if it is not one. */
+        private static int directions(byte[] buf, int start, int end) {
+            if (end - start == 2) {
+                for (int d = 0; d < DIRECTIONS.length; d += 1) {
+                    if (buf[start] == DIRECTIONS[d].charAt(0)
+                        && buf[start + 1] == DIRECTIONS[d].charAt(1)) {
+                        return d;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /** Returns BUF[START .. END-1] as a String. */
+        private static String text(byte[] buf, int start, int end) {
+            return new String(buf, start, end - start, UTF8);
+        }
+
+        /** Returns true iff B is a space, tab, carriage return, or form
+         *  feed. */
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+        }
+
+        /** The file I am part of. */
+        private final FileChannel _channel;
+        /** My first byte and the byte after my last. */
+        private final long _start, _end;
+        /** The records I contain, in order. */
+        private final ArrayList<Record> _records = new ArrayList<Record>();
+        /** The road names I have seen, mapped to themselves, so that
+         *  roads with the same name share a String. */
+        private final HashMap<String, String> _roadNames =
+            new HashMap<String, String>();
+        /** The number of lines parsed. */
+        private int _lines;
+        /** A description of the first error, or null if there is none. */
+        private String _error;
+        /** The line (counting from 1) containing the first error. */
+        private int _errorLine;
+    }
+
+    /** The valid DIRECTIONS fields of R lines. */
+    static final String[] DIRECTIONS = { "NS", "SN", "WE", "EW" };
+    /** The maximum number of fields in a line. */
+    private static final int MAX_FIELDS = 6;
+    /** Largest significand converted directly by parseDouble. */
+    private static final long MAX_EXACT = 1L << 53;
+    /** The powers of 10 that are exactly representable as doubles. */
+    private static final double[] POWERS_OF_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /** Smallest chunk of a file given its own thread, in bytes. */
+    private static final long MIN_CHUNK = 1 << 20;
+    /** Largest chunk of a file, in bytes. */
+    private static final long MAX_CHUNK = 1 << 26;
+    /** Size of the buffer used to find chunk boundaries. */
+    private static final int WINDOW_SIZE = 1 << 12;
+    /** Line terminator. */
+    private static final byte NEWLINE = '\n';
+    /** Encoding of names. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Encoding of numbers. */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /** Initial size of the arrays of places and roads. */
+    private static final int INITIAL_SIZE = 16;
+
+    /** Numbers of places and of roads. */
+    private int _placeCount, _roadCount;
+    /** The names of the places. */
+    private String[] _placeNames = new String[INITIAL_SIZE];
+    /** The coordinates of the places. */
+    private double[] _xs = new double[INITIAL_SIZE],
+        _ys = new double[INITIAL_SIZE];
+    /** The name table: place numbers, or -1 for empty slots.  Its size is
+     *  a power of 2, at least twice the number of places. */
+    private int[] _nameTable = emptyTable(2 * INITIAL_SIZE);
+    /** The places each road connects, and the number in _pool of its
+     *  name. */
+    private int[] _firsts = new int[INITIAL_SIZE],
+        _seconds = new int[INITIAL_SIZE], _roadNames = new int[INITIAL_SIZE];
+    /** The index in DIRECTIONS of the direction pair of each road. */
+    private byte[] _directions = new byte[INITIAL_SIZE];
+    /** The lengths of the roads. */
+    private double[] _lengths = new double[INITIAL_SIZE];
+    /** The distinct road names. */
+    private final ArrayList<String> _pool = new ArrayList<String>();
+    /** Maps road names to their numbers in _pool, while reading. */
+    private HashMap<String, Integer> _poolIndex =
+        new HashMap<String, Integer>();
+
+}
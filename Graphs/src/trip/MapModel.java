@@ -0,0 +1,154 @@
+package trip;
+
+import graph.Graph;
+import graph.UndirectedGraph;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A map held as parallel arrays indexed by place and road number, rather
+ *  than as objects.  Places and roads are numbered from 0 in the order in
+ *  which the map defines them.  Each road connects a first and a second
+ *  place (PLACE1 and PLACE2 of its R line), has a length, a name, and a
+ *  direction pair, given as an index into MapLoader.DIRECTIONS.
+ *
+ *  The graph of the map is built on first use.  Its labels are Places
+ *  and Roads that hold only their numbers, and get everything else from
+ *  the model, so that the graph costs little more than its own
+ *  structure.  Programs that need only the structure, such as Router,
+ *  use the roads at each place in compressed sparse row form instead,
+ *  and never build the graph.
+ *  @author Austin Gandy
+ */
+abstract class MapModel implements MapSource {
+
+    /** Returns the number of places. */
+    abstract int placeCount();
+
+    /** Returns the number of roads. */
+    abstract int roadCount();
+
+    /** Returns the name of place #ID. */
+    abstract String placeName(int id);
+
+    /** Returns the x coordinate of place #ID. */
+    abstract double placeX(int id);
+
+    /** Returns the y coordinate of place #ID. */
+    abstract double placeY(int id);
+
+    /** Returns the number of the place named NAME, or -1 if there is
+     *  none. */
+    abstract int placeId(String name);
+
+    /** Returns the name of road #INDEX. */
+    abstract String roadName(int index);
+
+    /** Returns the index in MapLoader.DIRECTIONS of the direction pair of
+     *  road #INDEX. */
+    abstract int roadDirections(int index);
+
+    /** Returns the length of road #INDEX. */
+    abstract double roadLength(int index);
+
+    /** Returns the number of the first place of road #INDEX. */
+    abstract int firstPlace(int index);
+
+    /** Returns the number of the second place of road #INDEX. */
+    abstract int secondPlace(int index);
+
+    /** Returns the number of the place at the other end of road #INDEX
+     *  from place #ID, which must be one of its ends. */
+    int otherPlace(int index, int id) {
+        int first = firstPlace(index);
+        return first == id ? secondPlace(index) : first;
+    }
+
+    /** Returns the start of the roads at each place in adjacentRoads(),
+     *  followed by the number of entries there: the roads at place #i
+     *  are entries [result[i] .. result[i+1]-1] of adjacentRoads(). */
+    int[] adjacencyOffsets() {
+        int n = placeCount();
+        int[] result = new int[n + 1];
+        for (int r = 0; r < roadCount(); r += 1) {
+            result[firstPlace(r) + 1] += 1;
+            result[secondPlace(r) + 1] += 1;
+        }
+        for (int i = 0; i < n; i += 1) {
+            result[i + 1] += result[i];
+        }
+        return result;
+    }
+
+    /** Returns the numbers of the roads at each place, in order of place
+     *  and then of road, as divided by adjacencyOffsets().  A road from a
+     *  place to itself is there twice, as it is in the graph. */
+    int[] adjacentRoads() {
+        int[] fill = adjacencyOffsets();
+        int[] result = new int[fill[fill.length - 1]];
+        for (int r = 0; r < roadCount(); r += 1) {
+            int v0 = firstPlace(r), v1 = secondPlace(r);
+            result[fill[v0]] = r;
+            fill[v0] += 1;
+            result[fill[v1]] = r;
+            fill[v1] += 1;
+        }
+        return result;
+    }
+
+    /** Returns the places, by number, as a list that makes each Place
+     *  when it is asked for. */
+    List<Place> places() {
+        return new AbstractList<Place>() {
+            @Override
+            public Place get(int id) {
+                if (id < 0 || id >= placeCount()) {
+                    throw new IndexOutOfBoundsException();
+                }
+                return new Place(MapModel.this, id);
+            }
+
+            @Override
+            public int size() {
+                return placeCount();
+            }
+        };
+    }
+
+    @Override
+    public synchronized Graph<Place, Road> getMap() {
+        if (_map == null) {
+            Graph<Place, Road> map = new UndirectedGraph<Place, Road>();
+            int n = placeCount();
+            _vertices = new ArrayList<Graph<Place, Road>.Vertex>(n);
+            for (int i = 0; i < n; i += 1) {
+                _vertices.add(map.add(new Place(this, i)));
+            }
+            for (int r = 0; r < roadCount(); r += 1) {
+                map.add(_vertices.get(firstPlace(r)),
+                        _vertices.get(secondPlace(r)), new Road(this, r));
+            }
+            _map = map;
+        }
+        return _map;
+    }
+
+    @Override
+    public Graph<Place, Road>.Vertex find(String name) {
+        int id = placeId(name);
+        return id < 0 ? null : vertex(id);
+    }
+
+    /** Returns the vertex of place #ID in getMap(). */
+    Graph<Place, Road>.Vertex vertex(int id) {
+        getMap();
+        return _vertices.get(id);
+    }
+
+    /** The graph, or null if it has not yet been built. */
+    private Graph<Place, Road> _map;
+    /** The vertex in _map of each place. */
+    private ArrayList<Graph<Place, Road>.Vertex> _vertices;
+
+}
@@ -0,0 +1,17 @@
+package trip;
+
+import graph.Graph;
+
+/** A map of places and the roads between them.
+ *  @author Austin Gandy
+ */
+interface MapSource {
+
+    /** Returns the graph of the map. */
+    Graph<Place, Road> getMap();
+
+    /** Returns the vertex in getMap() of the place named NAME, or null if
+     *  there is none. */
+    Graph<Place, Road>.Vertex find(String name);
+
+}
@@ -3,43 +3,44 @@ package trip;
 import graph.Weightable;
 
 /** Represents a location on a graph. Used as the VLabel of the graph used to
- *  find trips and stuff.
+ *  find trips and stuff.  A Place is a view of one place of a MapModel.
  *  @author Austin Gandy
  */
 class Place implements Weightable {
 
 
-    /** It's a constructor. Takes in a NAME, XVAL, and YVAL. */
-    Place(String name, double xVal, double yVal) {
-        _name = name;
-        _xVal = xVal;
-        _yVal = yVal;
-        _weight = 0.0;
+    /** It's a constructor. The place #ID of MODEL. */
+    Place(MapModel model, int id) {
+        _model = model;
+        _id = id;
     }
 
-    /** returns _name. */
+    /** returns my name. */
     String getName() {
-        return _name;
+        return _model.placeName(_id);
+    }
+
+    /** returns my number in my model. */
+    int getId() {
+        return _id;
     }
 
     /** returns _location's x coordinate. */
     double getX() {
-        return _xVal;
+        return _model.placeX(_id);
     }
 
     /** returns _location's y coordinate. */
     double getY() {
-        return _yVal;
+        return _model.placeY(_id);
     }
 
-    /** my name. */
-    private String _name;
-    /** X coordinate of the location of me. */
-    private Double _xVal;
-    /** Y coordinate of the location of me. */
-    private Double _yVal;
+    /** the model holding me. */
+    private final MapModel _model;
+    /** my number in _model. */
+    private final int _id;
     /** the settable weight of me. Initially 0.0. */
-    private Double _weight;
+    private double _weight;
 
     @Override
     public double weight() {
@@ -52,4 +53,3 @@ class Place implements Weightable {
     }
 
 }
-
@@ -0,0 +1,270 @@
+package trip;
+
+import java.util.Arrays;
+
+/** A spatial index of the places of a map, for finding places near given
+ *  coordinates.
+ *
+ *  The index is a k-d tree stored implicitly in arrays: the places in
+ *  positions [LO .. HI-1] form a subtree whose root is at the middle
+ *  position, MID, with the places before MID on one side of it and those
+ *  after on the other, split alternately by x and by y coordinate at
+ *  successive depths.  The whole tree is built at once, by selecting the
+ *  median of each subtree in linear time, so that building takes
+ *  O(N lg N) time for N places, and finding the nearest place takes
+ *  O(lg N) time for places that are spread out.  Places are ordered by
+ *  distance and then by number, so that results are deterministic even
+ *  when several places are equally near.
+ *  @author Austin Gandy
+ */
+class PlaceIndex {
+
+    /** An index of the places of MODEL. */
+    PlaceIndex(MapModel model) {
+        int n = model.placeCount();
+        _ids = new int[n];
+        _xs = new double[n];
+        _ys = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            _ids[i] = i;
+            _xs[i] = model.placeX(i);
+            _ys[i] = model.placeY(i);
+        }
+        build(0, n, 0);
+    }
+
+    /** Returns the number of the place nearest to (X, Y), or -1 if there
+     *  are no places. */
+    int nearest(double x, double y) {
+        int[] result = nearest(x, y, 1);
+        return result.length == 0 ? -1 : result[0];
+    }
+
+    /** Returns the numbers of the K places nearest to (X, Y), or of all
+     *  places if there are fewer than K, nearest first. */
+    int[] nearest(double x, double y, int k) {
+        Nearest best = new Nearest(Math.min(k, _ids.length));
+        if (best._ids.length > 0) {
+            nearest(x, y, 0, _ids.length, 0, best);
+        }
+        return best._ids;
+    }
+
+    /** Returns the numbers of the places whose coordinates (x, y) satisfy
+     *  X0 <= x <= X1 and Y0 <= y <= Y1, in increasing order. */
+    int[] within(double x0, double y0, double x1, double y1) {
+        Found found = new Found();
+        within(x0, y0, x1, y1, 0, _ids.length, 0, found);
+        int[] result = Arrays.copyOf(found._ids, found._count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Arrange positions [LO .. HI-1], which hold the subtree at DEPTH,
+     *  as a k-d tree. */
+    private void build(int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, depth % 2 == 0);
+            build(lo, mid, depth + 1);
+            lo = mid + 1;
+            depth += 1;
+        }
+    }
+
+    /** Rearrange positions [LO .. HI-1] so that position K holds the place
+     *  that would be there if they were sorted by x (if BYX) or y
+     *  coordinate, and then by number, with those before it not greater
+     *  and those after it not less. */
+    private void select(int lo, int hi, int k, boolean byX) {
+        hi -= 1;
+        while (lo < hi) {
+            int pivot = (lo + hi) >>> 1;
+            double key = byX ? _xs[pivot] : _ys[pivot];
+            int id = _ids[pivot];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (less(i, key, id, byX)) {
+                    i += 1;
+                }
+                while (greater(j, key, id, byX)) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Returns true iff the place at position P comes before the place
+     *  numbered ID with coordinate KEY, ordering by x (if BYX) or y
+     *  coordinate and then by number. */
+    private boolean less(int p, double key, int id, boolean byX) {
+        double c = byX ? _xs[p] : _ys[p];
+        return c < key || (c == key && _ids[p] < id);
+    }
+
+    /** Returns true iff the place at position P comes after the place
+     *  numbered ID with coordinate KEY, as for less. */
+    private boolean greater(int p, double key, int id, boolean byX) {
+        double c = byX ? _xs[p] : _ys[p];
+        return c > key || (c == key && _ids[p] > id);
+    }
+
+    /** Exchange the places at positions I and J. */
+    private void swap(int i, int j) {
+        int id = _ids[i];
+        _ids[i] = _ids[j];
+        _ids[j] = id;
+        double c = _xs[i];
+        _xs[i] = _xs[j];
+        _xs[j] = c;
+        c = _ys[i];
+        _ys[i] = _ys[j];
+        _ys[j] = c;
+    }
+
+    /** Offer to BEST the places in positions [LO .. HI-1], which hold the
+     *  subtree at DEPTH, that may be among the nearest to (X, Y). */
+    private void nearest(double x, double y, int lo, int hi, int depth,
+                         Nearest best) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double dx = x - _xs[mid], dy = y - _ys[mid];
+            best.offer(_ids[mid], dx * dx + dy * dy);
+            double split = depth % 2 == 0 ? dx : dy;
+            int nearLo, nearHi, farLo, farHi;
+            if (split < 0) {
+                nearLo = lo;
+                nearHi = mid;
+                farLo = mid + 1;
+                farHi = hi;
+            } else {
+                nearLo = mid + 1;
+                nearHi = hi;
+                farLo = lo;
+                farHi = mid;
+            }
+            nearest(x, y, nearLo, nearHi, depth + 1, best);
+            if (split * split > best.bound()) {
+                return;
+            }
+            lo = farLo;
+            hi = farHi;
+            depth += 1;
+        }
+    }
+
+    /** Add to FOUND the numbers of the places in positions [LO .. HI-1],
+     *  which hold the subtree at DEPTH, that are within the rectangle
+     *  [X0, X1] x [Y0, Y1]. */
+    private void within(double x0, double y0, double x1, double y1,
+                        int lo, int hi, int depth, Found found) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double x = _xs[mid], y = _ys[mid];
+            if (x0 <= x && x <= x1 && y0 <= y && y <= y1) {
+                found.add(_ids[mid]);
+            }
+            double c = depth % 2 == 0 ? x : y;
+            if ((depth % 2 == 0 ? x0 : y0) <= c) {
+                within(x0, y0, x1, y1, lo, mid, depth + 1, found);
+            }
+            if (c > (depth % 2 == 0 ? x1 : y1)) {
+                return;
+            }
+            lo = mid + 1;
+            depth += 1;
+        }
+    }
+
+    /** The places found by a search for the places in a rectangle. */
+    private static class Found {
+
+        /** Add place #ID. */
+        void add(int id) {
+            if (_count == _ids.length) {
+                _ids = Arrays.copyOf(_ids, 2 * _count);
+            }
+            _ids[_count] = id;
+            _count += 1;
+        }
+
+        /** The places found, in _ids[0 .. _count-1]. */
+        private int[] _ids = new int[INITIAL_RESULT];
+        /** The number of places found. */
+        private int _count;
+    }
+
+    /** The best places found so far by a search for the places nearest
+     *  to a point. */
+    private static class Nearest {
+
+        /** A search for the K nearest places. */
+        Nearest(int k) {
+            _ids = new int[k];
+            _dists = new double[k];
+        }
+
+        /** Consider place #ID, whose squared distance from the point is
+         *  DIST. */
+        void offer(int id, double dist) {
+            int i = _count;
+            if (i == _ids.length) {
+                if (!before(dist, id, _dists[i - 1], _ids[i - 1])) {
+                    return;
+                }
+                i -= 1;
+            } else {
+                _count += 1;
+            }
+            while (i > 0 && before(dist, id, _dists[i - 1], _ids[i - 1])) {
+                _ids[i] = _ids[i - 1];
+                _dists[i] = _dists[i - 1];
+                i -= 1;
+            }
+            _ids[i] = id;
+            _dists[i] = dist;
+        }
+
+        /** Returns the squared distance beyond which no place can be
+         *  among the best. */
+        double bound() {
+            return _count < _ids.length ? Double.POSITIVE_INFINITY
+                : _dists[_count - 1];
+        }
+
+        /** Returns true iff a place numbered ID0 at squared distance
+         *  DIST0 is better than one numbered ID1 at DIST1. */
+        private static boolean before(double dist0, int id0, double dist1,
+                                      int id1) {
+            return dist0 < dist1 || (dist0 == dist1 && id0 < id1);
+        }
+
+        /** The best places found, nearest first. */
+        private final int[] _ids;
+        /** Their squared distances. */
+        private final double[] _dists;
+        /** The number of places found. */
+        private int _count;
+    }
+
+    /** Initial size of the result of within. */
+    private static final int INITIAL_RESULT = 64;
+
+    /** The place numbers, in tree order. */
+    private final int[] _ids;
+    /** The coordinates of the places, in tree order. */
+    private final double[] _xs, _ys;
+
+}
@@ -1,89 +1,85 @@
 package trip;
 
-import graph.Graph;
 import graph.Weighted;
 
-/** Represents a road on a map.
+/** Represents a road on a map.  A Road is a view of one road of a
+ *  MapModel.
  *  @author Austin Gandy
  *  */
 class Road implements Weighted {
 
-    /** Constructor takes in a NAME, DIRECTIONS (two cardinal direction strings)
-     *  a place TO and a place FROM, and a DISTANCE. */
-    Road(String name, String directions, Graph<Place, Road>.Vertex from,
-            Graph<Place, Road>.Vertex to, Double distance) {
-        _name = name;
-        String toString = directions.substring(0, 1);
-        if (toString.equals("N")) {
-            _wayFrom = "north";
-            _wayTo = "south";
-        } else if (toString.equals("S")) {
-            _wayFrom = "south";
-            _wayTo = "north";
-        } else if (toString.equals("E")) {
-            _wayFrom = "east";
-            _wayTo = "west";
-        } else {
-            _wayTo = "west";
-            _wayFrom = "east";
-        }
-        _from = from.getLabel();
-        _to = to.getLabel();
-        _distance = distance;
+    /** Constructor takes in a MODEL and the INDEX of a road in it. */
+    Road(MapModel model, int index) {
+        _model = model;
+        _index = index;
     }
 
     /** returns which way along me we need to go to get from FROM. */
     String getDirection(Place from) {
-        if (from.equals(_from)) {
-            return _wayFrom;
+        return getDirection(from.getId());
+    }
+
+    /** returns which way along me we need to go to get from place #FROM
+     *  of my model. */
+    String getDirection(int from) {
+        int d = _model.roadDirections(_index);
+        if (from == _model.secondPlace(_index)) {
+            return WAY_FROM[d];
         } else {
-            return _wayTo;
+            return WAY_TO[d];
         }
     }
 
-    /** Returns the distance from _from to _to. */
+    /** Returns my length. */
     @Override
     public double weight() {
-        return _distance;
+        return _model.roadLength(_index);
     }
 
     /** returns name. */
     public String getName() {
-        return _name;
+        return _model.roadName(_index);
     }
 
-    /** returns _from. */
+    /** returns the two cardinal direction strings I was made with. */
+    String getDirections() {
+        return MapLoader.DIRECTIONS[_model.roadDirections(_index)];
+    }
+
+    /** returns the place we came from. */
     public Place getFrom() {
-        return _from;
+        return _model.vertex(_model.secondPlace(_index)).getLabel();
     }
 
-    /** returns _to. */
+    /** returns the place we're going to. */
     public Place getTo() {
-        return _to;
+        return _model.vertex(_model.firstPlace(_index)).getLabel();
     }
 
-    /** returns _wayTo. */
+    /** returns the way along me from my first place. */
     public String getWayTo() {
-        return _wayTo;
+        return WAY_TO[_model.roadDirections(_index)];
     }
 
-    /** returns _distance. */
-    public Double getDistance() {
-        return _distance;
+    /** returns my length. */
+    public double getDistance() {
+        return _model.roadLength(_index);
     }
 
-    /** The name of the road. */
-    private String _name;
-    /** a cardinal direction. */
-    private String _wayTo;
-    /** a cardinal direction. */
-    private String _wayFrom;
-    /** the place we came from. */
-    private Place _from;
-    /** place we're going to. */
-    private Place _to;
-    /** distance on me from _from to _to or vice-versa. */
-    private double _distance;
+    /** The way along a road from its second place, for each of
+     *  MapLoader.DIRECTIONS. */
+    private static final String[] WAY_FROM = {
+        "north", "south", "east", "east"
+    };
+    /** The way along a road from its first place, for each of
+     *  MapLoader.DIRECTIONS. */
+    private static final String[] WAY_TO = {
+        "south", "north", "west", "west"
+    };
 
-}
+    /** The model holding me. */
+    private final MapModel _model;
+    /** My number in _model. */
+    private final int _index;
 
+}
@@ -0,0 +1,107 @@
+package trip;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes the directions for routes into a buffer that is kept from one
+ *  use to the next.
+ *
+ *  The directions for a route are one line naming its start, a blank
+ *  line, one numbered instruction for each run of consecutive roads with
+ *  the same name going the same way, and a blank line.  An instruction
+ *  gives the total length of its run, rounded to tenths of a mile; the
+ *  last one also names the end of the route.  Lengths are formatted by
+ *  hand, digit by digit, exactly as Double.toString would format them.
+ *  A renderer is not safe for use by several threads at once.
+ *  @author Austin Gandy
+ */
+final class RouteRenderer {
+
+    /** Append the directions for the route on MAP from place #START
+     *  along the roads numbered ROUTE, in order. */
+    void render(MapModel map, int start, int[] route) {
+        StringBuilder text = _text;
+        int at = start;
+        text.append("From ").append(map.placeName(at)).append(':')
+            .append(NL).append(NL);
+        int num = 1;
+        Road lastRoad = null;
+        String runWay = null;
+        double miles = 0.0;
+        for (int r : route) {
+            Road road = new Road(map, r);
+            if (lastRoad != null && lastRoad.getName().equals(road.getName())
+                && runWay.equals(lastRoad.getWayTo())) {
+                miles += road.getDistance();
+            } else {
+                if (lastRoad != null) {
+                    appendMiles(miles);
+                    text.append(" miles.").append(NL);
+                }
+                text.append(num).append(". Take ").append(road.getName())
+                    .append(' ').append(road.getDirection(at))
+                    .append(" for ");
+                miles = road.getDistance();
+                runWay = road.getWayTo();
+                num += 1;
+            }
+            at = map.otherPlace(r, at);
+            lastRoad = road;
+        }
+        appendMiles(miles);
+        text.append(" miles to ").append(map.placeName(at))
+            .append(NL).append(NL);
+    }
+
+    /** Returns the number of characters I hold. */
+    int length() {
+        return _text.length();
+    }
+
+    /** Discard the text I hold. */
+    void clear() {
+        _text.setLength(0);
+    }
+
+    /** Write the text I hold to OUT, and discard it. */
+    void writeTo(Writer out) throws IOException {
+        int n = _text.length();
+        if (_chars.length < n) {
+            _chars = new char[Math.max(n, 2 * _chars.length)];
+        }
+        _text.getChars(0, n, _chars, 0);
+        out.write(_chars, 0, n);
+        clear();
+    }
+
+    @Override
+    public String toString() {
+        return _text.toString();
+    }
+
+    /** Append MILES, rounded to tenths, as Double.toString would format
+     *  the rounded value. */
+    private void appendMiles(double miles) {
+        long tenths = Math.round(miles * 10);
+        if (tenths >= 0 && tenths < MAX_FIXED) {
+            _text.append(tenths / 10).append('.')
+                .append((char) ('0' + tenths % 10));
+        } else {
+            _text.append((double) tenths / 10);
+        }
+    }
+
+    /** The line separator. */
+    private static final String NL = System.lineSeparator();
+    /** Number of tenths beyond which Double.toString uses scientific
+     *  notation. */
+    private static final long MAX_FIXED = 100000000L;
+    /** Initial size of my buffers. */
+    private static final int INITIAL_SIZE = 1 << 12;
+
+    /** The text of the directions rendered. */
+    private final StringBuilder _text = new StringBuilder(INITIAL_SIZE);
+    /** Holds my text while it is written. */
+    private char[] _chars = new char[INITIAL_SIZE];
+
+}
@@ -0,0 +1,227 @@
+package trip;
+
+import graph.PathFinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/** Finds and describes trips on one map.  A Router does not change once
+ *  made, and may be used by several threads at once.  It remembers the
+ *  routes of recent legs, so that legs asked for again are described
+ *  without searching the map again.  It finds routes on the roads at
+ *  each place of the map, as given by MapModel.adjacentRoads, without
+ *  building the graph of the map, and indexes the places by location
+ *  only when first asked for a place by its coordinates, so that a
+ *  compiled map is ready for use as soon as it is read.
+ *  @author Austin Gandy
+ */
+class Router {
+
+    /** A Router for the map in SOURCE. */
+    Router(MapModel source) {
+        _source = source;
+        int[] offsets = source.adjacencyOffsets();
+        _roads = source.adjacentRoads();
+        int[] targets = new int[_roads.length];
+        double[] weights = new double[_roads.length];
+        for (int v = 0; v < offsets.length - 1; v += 1) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k += 1) {
+                targets[k] = source.otherPlace(_roads[k], v);
+                weights[k] = source.roadLength(_roads[k]);
+            }
+        }
+        _finder = new PathFinder<Place, Road>(offsets, targets, weights,
+                                              source.places(), false,
+                                              new EuclidDistancer(),
+                                              CACHED_LEGS, CACHED_ROADS);
+    }
+
+    /** Returns a Router for the map in FILE, which may be a text map or a
+     *  compiled map, using up to THREADS threads to read a text map.
+     *  Throws MapException if FILE is malformed. */
+    static Router read(File file, int threads) throws IOException {
+        if (CompiledMap.isCompiled(file)) {
+            return new Router(CompiledMap.read(file));
+        } else {
+            return new Router(MapLoader.read(file, threads));
+        }
+    }
+
+    /** Returns the places named by the request line LINE: its words, with
+     *  commas removed.  A place may be named by its coordinates, as
+     *  @X:Y, which stands for the place nearest to (X, Y). */
+    static String[] places(String line) {
+        return line.replace(",", "").split("\\s+");
+    }
+
+    /** Returns a description of the use of my cache of routes. */
+    String cacheStats() {
+        return String.format("%d legs cached, %d hits, %d misses",
+                             _finder.cachedPaths(), _finder.hits(),
+                             _finder.misses());
+    }
+
+    /** Returns the directions for the trip through the places named
+     *  DEST, in order.  Throws MapException as for leg. */
+    String trip(String[] dest) {
+        RouteRenderer out = _renderers.get();
+        out.clear();
+        trip(dest, out);
+        return out.toString();
+    }
+
+    /** Append to OUT the directions for the trip through the places named
+     *  DEST, in order.  Throws MapException as for leg, leaving in OUT the
+     *  directions for the legs before the one in error. */
+    void trip(String[] dest, RouteRenderer out) {
+        for (int i = 0; i < dest.length - 1; i += 1) {
+            leg(dest[i], dest[i + 1], out);
+        }
+    }
+
+    /** Returns the places named DEST, reordered so that the trip through
+     *  them is short.  The trip still starts at DEST[0], and if it ends
+     *  where it starts, it still does so; otherwise, it may end anywhere.
+     *  The distances between all the places are found as tasks on POOL,
+     *  and the order is improved for up to BUDGET nanoseconds (see
+     *  TripPlanner).  Throws MapException if a place is unknown or cannot
+     *  be reached from DEST[0]. */
+    String[] plan(String[] dest, ExecutorService pool, long budget) {
+        long deadline = System.nanoTime() + budget;
+        int n = dest.length;
+        if (n <= 2) {
+            return dest;
+        }
+        final int[] stops = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            stops[i] = find(dest[i]);
+            if (stops[i] < 0) {
+                throw new MapException("Unknown place %s.", dest[i]);
+            }
+        }
+        ArrayList<Future<double[]>> rows =
+            new ArrayList<Future<double[]>>(n);
+        for (final int v : stops) {
+            rows.add(pool.submit(new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    return _finder.distances(v, stops);
+                }
+            }));
+        }
+        double[][] dist = new double[n][];
+        try {
+            for (int i = 0; i < n; i += 1) {
+                dist[i] = rows.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        for (int i = 1; i < n; i += 1) {
+            if (dist[0][i] == Double.POSITIVE_INFINITY) {
+                throw new MapException("No route from %s to %s.",
+                                       dest[0], dest[i]);
+            }
+        }
+        boolean returns = stops[0] == stops[n - 1];
+        int[] order = TripPlanner.order(dist, returns, deadline);
+        String[] result = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = dest[order[i]];
+        }
+        return result;
+    }
+
+    /** Returns the number of the place named PLACE, which may be a name
+     *  or coordinates as for places, or -1 if there is none. */
+    int find(String place) {
+        if (!place.startsWith("@")) {
+            return _source.placeId(place);
+        }
+        int colon = place.indexOf(':');
+        if (colon < 0) {
+            return -1;
+        }
+        try {
+            return index().nearest(
+                Double.parseDouble(place.substring(1, colon)),
+                Double.parseDouble(place.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Returns the index of the places of my map by location, building
+     *  it on first use. */
+    private synchronized PlaceIndex index() {
+        if (_index == null) {
+            _index = new PlaceIndex(_source);
+        }
+        return _index;
+    }
+
+    /** Returns the directions for the leg of a trip from the place named
+     *  FROM to the place named TO, as for find.  Throws MapException if
+     *  either place is unknown or there is no route between them. */
+    String leg(String from, String to) {
+        RouteRenderer out = _renderers.get();
+        out.clear();
+        leg(from, to, out);
+        return out.toString();
+    }
+
+    /** Append to OUT the directions for the leg of a trip from the place
+     *  named FROM to the place named TO, as for leg(FROM, TO). */
+    void leg(String from, String to, RouteRenderer out) {
+        int start = find(from);
+        int end = find(to);
+        if (start < 0 || end < 0) {
+            throw new MapException("Unknown place %s.",
+                                   start < 0 ? from : to);
+        }
+        int[] whereTo = _finder.shortestPath(start, end);
+        if (whereTo == null) {
+            throw new MapException("No route from %s to %s.", from, to);
+        }
+        for (int i = 0; i < whereTo.length; i += 1) {
+            whereTo[i] = _roads[whereTo[i]];
+        }
+        out.render(_source, start, whereTo);
+    }
+
+    /** Maximum number of legs whose routes are cached. */
+    private static final int CACHED_LEGS = 1 << 16;
+    /** Maximum total number of roads in the cached routes. */
+    private static final int CACHED_ROADS = 1 << 22;
+
+    /** The map. */
+    private final MapModel _source;
+    /** The roads at each place, in the order of the adjacency entries of
+     *  _finder. */
+    private final int[] _roads;
+    /** The places of the map, by location, or null if they have not yet
+     *  been indexed. */
+    private PlaceIndex _index;
+    /** Finds routes on the map. */
+    private final PathFinder<Place, Road> _finder;
+    /** The renderer of directions of each thread. */
+    private final ThreadLocal<RouteRenderer> _renderers =
+        new ThreadLocal<RouteRenderer>() {
+            @Override
+            protected RouteRenderer initialValue() {
+                return new RouteRenderer();
+            }
+        };
+
+}
@@ -0,0 +1,383 @@
+package trip;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** A resident trip server, which reads its map once and then answers
+ *  requests from clients on the local machine until shut down.
+ *
+ *  Clients connect to a TCP port on the loopback address and send
+ *  requests, one per line, in UTF-8.  Each request gets a reply whose
+ *  first line is either
+ *      OK N
+ *  followed by N lines of text, or
+ *      ERR MESSAGE
+ *  The requests are
+ *      TRIP PLACES    The directions for the trip through PLACES, which
+ *                     are as in a request line of the trip program.
+ *      RELOAD         Read the map file again.  If that fails, the old
+ *                     map is kept.
+ *      PING           Do nothing.
+ *      STATS          Describe the use of the cache of routes for the
+ *                     current map, in one line.
+ *      QUIT           Close this connection.
+ *      SHUTDOWN       Shut down the server.
+ *  Each connection has a thread of its own, which does little more than
+ *  read its requests.  TRIP, RELOAD, and STATS requests are answered by
+ *  a bounded pool of threads shared by all connections, so that idle
+ *  connections tie up none of them.  A request that arrives when the
+ *  pool and its queue are full gets the reply "ERR busy", and so does a
+ *  connection that arrives when there are already MAX_CONNECTIONS; the
+ *  latter is then closed.  A request uses the map that was current
+ *  when it arrived, so that a reload does not disturb requests in
+ *  progress.  On shutdown, the server stops accepting connections,
+ *  finishes the requests in progress, and then closes all connections.
+ *  @author Austin Gandy
+ */
+class Server {
+
+    /** A server for the map in MAPFILE, listening on PORT (any free port
+     *  if 0) and answering up to THREADS requests at once. */
+    Server(File mapFile, int port, int threads) throws IOException {
+        _mapFile = mapFile;
+        _threads = threads;
+        _router = Router.read(mapFile, threads);
+        _pool = new ThreadPoolExecutor(threads, threads, 0L,
+                                       TimeUnit.MILLISECONDS,
+                                       new ArrayBlockingQueue<Runnable>(
+                                           QUEUE_PER_THREAD * threads));
+        _listener = new ServerSocket(port, BACKLOG,
+                                     InetAddress.getLoopbackAddress());
+    }
+
+    /** Returns the port on which I listen. */
+    int getPort() {
+        return _listener.getLocalPort();
+    }
+
+    /** Accept and serve connections until I am shut down, and then wait
+     *  for the connections in progress to close. */
+    void serve() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = _listener.accept();
+            } catch (IOException e) {
+                if (isShutDown()) {
+                    break;
+                }
+                continue;
+            }
+            Connection conn = new Connection(socket);
+            if (conn.open()) {
+                Thread reader = new Thread(conn, "trip-connection");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        }
+        try {
+            synchronized (this) {
+                while (!_connections.isEmpty()) {
+                    wait();
+                }
+            }
+            _pool.shutdown();
+            while (!_pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                _served = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Wait until serve has returned. */
+    synchronized void awaitTermination() throws InterruptedException {
+        while (!_served) {
+            wait();
+        }
+    }
+
+    /** Stop accepting connections, and close each connection once its
+     *  current request, if any, is answered. */
+    void shutdown() {
+        Connection[] conns;
+        synchronized (this) {
+            if (_shutDown) {
+                return;
+            }
+            _shutDown = true;
+            conns = _connections.toArray(new Connection[0]);
+        }
+        try {
+            _listener.close();
+        } catch (IOException e) {
+            /* Ignore: nothing more can be done. */
+        }
+        for (Connection conn : conns) {
+            conn.close();
+        }
+    }
+
+    /** Returns true iff shutdown has been called. */
+    synchronized boolean isShutDown() {
+        return _shutDown;
+    }
+
+    /** Read my map file again, so that later requests use the new map.
+     *  Throws IOException or MapException, keeping the old map, if the
+     *  file cannot be read. */
+    synchronized void reload() throws IOException {
+        _router = Router.read(_mapFile, _threads);
+    }
+
+    /** Returns the reply to the request LINE, not including QUIT or
+     *  SHUTDOWN. */
+    String reply(String line) {
+        String command = line.trim();
+        String arg = "";
+        int space = command.indexOf(' ');
+        if (space >= 0) {
+            arg = command.substring(space + 1).trim();
+            command = command.substring(0, space);
+        }
+        try {
+            switch (command) {
+            case "TRIP":
+                Router router = _router;
+                return ok(router.trip(Router.places(arg)));
+            case "RELOAD":
+                reload();
+                return ok("");
+            case "PING":
+                return ok("");
+            case "STATS":
+                return ok(_router.cacheStats() + "\n");
+            default:
+                return error("unknown request " + command);
+            }
+        } catch (MapException e) {
+            return error(e.getMessage());
+        } catch (IOException e) {
+            return error("could not read map: " + e.getMessage());
+        }
+    }
+
+    /** Returns the reply to the request LINE, found by a thread of my
+     *  pool, or "ERR busy" if the pool has no room for it. */
+    private String submit(final String line) throws IOException {
+        Future<String> reply;
+        try {
+            reply = _pool.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return reply(line);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return error("busy");
+        }
+        try {
+            return reply.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Returns a reply whose text is TEXT, which consists of whole
+     *  lines. */
+    static String ok(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == '\n') {
+                lines += 1;
+            }
+        }
+        return "OK " + lines + "\n" + text;
+    }
+
+    /** Returns an error reply with message MESSAGE. */
+    static String error(String message) {
+        return "ERR " + message.replace('\n', ' ') + "\n";
+    }
+
+    /** One client connection. */
+    private class Connection implements Runnable {
+
+        /** A connection on SOCKET. */
+        Connection(Socket socket) {
+            _socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                _socket.setTcpNoDelay(true);
+                BufferedReader in =
+                    new BufferedReader(new InputStreamReader(
+                        _socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out =
+                    new BufferedWriter(new OutputStreamWriter(
+                        _socket.getOutputStream(), StandardCharsets.UTF_8));
+                while (true) {
+                    String line = in.readLine();
+                    if (line == null || !begin()) {
+                        break;
+                    }
+                    String request = line.trim();
+                    boolean more = !request.equals("QUIT")
+                        && !request.equals("SHUTDOWN");
+                    if (!more || request.equals("PING")) {
+                        out.write(ok(""));
+                    } else {
+                        out.write(submit(request));
+                    }
+                    out.flush();
+                    if (request.equals("SHUTDOWN")) {
+                        shutdown();
+                    }
+                    if (!end() || !more) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                /* The client went away, or I was closed while idle. */
+            } finally {
+                remove();
+            }
+        }
+
+        /** Reply "busy" to my client and close my connection. */
+        void refuse() {
+            try {
+                Writer out =
+                    new OutputStreamWriter(_socket.getOutputStream(),
+                                           StandardCharsets.UTF_8);
+                out.write(error("busy"));
+                out.flush();
+            } catch (IOException e) {
+                /* Ignore: the connection is closed anyway. */
+            }
+            closeSocket();
+        }
+
+        /** Close my connection now if it is idle, and otherwise once its
+         *  current request is answered. */
+        synchronized void close() {
+            _closing = true;
+            if (!_busy) {
+                closeSocket();
+            }
+        }
+
+        /** Record that I am being served, returning false (and closing
+         *  my connection, after replying "busy" if there are too many
+         *  connections) if I am not to be served. */
+        boolean open() {
+            synchronized (Server.this) {
+                if (!_shutDown && _connections.size() < MAX_CONNECTIONS) {
+                    _connections.add(this);
+                    return true;
+                }
+                if (_shutDown) {
+                    closeSocket();
+                    return false;
+                }
+            }
+            refuse();
+            return false;
+        }
+
+        /** Record that I am no longer being served. */
+        private void remove() {
+            synchronized (Server.this) {
+                _connections.remove(this);
+                Server.this.notifyAll();
+            }
+            closeSocket();
+        }
+
+        /** Mark me as busy with a request, returning false if my
+         *  connection is to be closed instead. */
+        private synchronized boolean begin() {
+            _busy = !_closing;
+            return _busy;
+        }
+
+        /** Mark me as idle, returning false if my connection is to be
+         *  closed. */
+        private synchronized boolean end() {
+            _busy = false;
+            return !_closing;
+        }
+
+        /** Close my socket. */
+        private void closeSocket() {
+            try {
+                _socket.close();
+            } catch (IOException e) {
+                /* Ignore: nothing more can be done. */
+            }
+        }
+
+        /** My socket. */
+        private final Socket _socket;
+        /** True while I am answering a request. */
+        private boolean _busy;
+        /** True if I am to be closed. */
+        private boolean _closing;
+    }
+
+    /** Number of queued requests allowed per thread. */
+    private static final int QUEUE_PER_THREAD = 4;
+    /** Maximum number of connections served at once. */
+    private static final int MAX_CONNECTIONS = 256;
+    /** Maximum number of connections waiting to be accepted. */
+    private static final int BACKLOG = 50;
+
+    /** The map file. */
+    private final File _mapFile;
+    /** The number of threads answering requests. */
+    private final int _threads;
+    /** Finds trips on the current map. */
+    private volatile Router _router;
+    /** The threads that answer requests. */
+    private final ThreadPoolExecutor _pool;
+    /** The socket on which I accept connections. */
+    private final ServerSocket _listener;
+    /** The connections being served. */
+    private final HashSet<Connection> _connections =
+        new HashSet<Connection>();
+    /** True once shutdown has been called. */
+    private boolean _shutDown;
+    /** True once serve has returned. */
+    private boolean _served;
+
+}
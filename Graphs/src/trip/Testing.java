@@ -5,6 +5,21 @@ package trip;
  * may not be part of your trip package per se (that is, it must be
  * possible to remove them and still have your package work). */
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import graph.Graph;
+
 import org.junit.Test;
 import ucb.junit.textui;
 import static org.junit.Assert.*;
@@ -22,4 +37,364 @@ public class Testing {
         assertTrue(true);
     }
 
+    @Test
+    public void parseDouble() {
+        String[] numbers = {
+            "0", "-0", "1", "+2", "-6722.2", "2553", "1.8355", ".5", "5.",
+            "123456789012345678901", "0.1234567890123456789012345",
+            "1e10", "-3.5E-7", "9007199254740993", "1.7976931348623157e308"
+        };
+        for (String number : numbers) {
+            byte[] bytes = number.getBytes(Charset.forName("US-ASCII"));
+            assertEquals(number,
+                         Double.doubleToLongBits(Double.parseDouble(number)),
+                         Double.doubleToLongBits(
+                             MapLoader.parseDouble(bytes, 0, bytes.length)));
+        }
+    }
+
+    /** Returns a temporary file containing TEXT. */
+    private static File mapFile(String text) throws IOException {
+        File file = File.createTempFile("map", null);
+        file.deleteOnExit();
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void loadMap() throws IOException {
+        File file = mapFile("L A 0 0\r\n\nL B 3.5 -1\nR A US1 2.25 WE B\n"
+                            + "L C 1 1\nR B I5 1 NS C\n");
+        MapLoader loader = MapLoader.read(file, 4);
+        assertEquals(3, loader.placeCount());
+        assertEquals(2, loader.roadCount());
+        assertEquals(1, loader.placeId("B"));
+        assertEquals(-1, loader.placeId("D"));
+        assertEquals(-1.0, loader.find("B").getLabel().getY(), 0.0);
+        Graph<Place, Road>.Vertex b = loader.find("B");
+        assertEquals(2, loader.getMap().degree(b));
+        Road road = loader.getMap().edges().iterator().next().getLabel();
+        assertEquals("US1", road.getName());
+        assertEquals(2.25, road.getDistance(), 0.0);
+    }
+
+    @Test
+    public void mapModel() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i += 1) {
+            text.append("L P" + i + " " + i + " " + -i + "\n");
+            if (i > 0) {
+                text.append("R P" + (i - 1) + " US" + (i % 3) + " 1.5 SN P"
+                            + i + "\n");
+            }
+        }
+        MapLoader model = MapLoader.read(mapFile(text.toString()), 1);
+        assertEquals(100, model.placeCount());
+        assertEquals(99, model.roadCount());
+        for (int i = 0; i < 100; i += 1) {
+            assertEquals(i, model.placeId("P" + i));
+            assertEquals(-i, model.placeY(i), 0.0);
+        }
+        assertSame(model.roadName(0), model.roadName(3));
+        assertEquals("US1", model.roadName(0));
+        assertEquals(98, model.firstPlace(98));
+        assertEquals(99, model.secondPlace(98));
+        Road road = model.getMap().edges().iterator().next().getLabel();
+        assertEquals("SN", road.getDirections());
+        assertEquals("south", road.getDirection(model.find("P1").getLabel()));
+        assertEquals("north", road.getDirection(model.find("P0").getLabel()));
+    }
+
+    @Test
+    public void placeIndex() throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(7);
+        int n = 500;
+        double[] xs = new double[n], ys = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            xs[i] = random.nextInt(100);
+            ys[i] = random.nextInt(50) / 4.0;
+            text.append("L P" + i + " " + xs[i] + " " + ys[i] + "\n");
+        }
+        MapLoader model = MapLoader.read(mapFile(text.toString()), 1);
+        PlaceIndex index = new PlaceIndex(model);
+        for (int q = 0; q < 200; q += 1) {
+            double x = random.nextDouble() * 110 - 5,
+                y = random.nextDouble() * 15 - 1;
+            Integer[] all = new Integer[n];
+            final double[] dists = new double[n];
+            for (int i = 0; i < n; i += 1) {
+                all[i] = i;
+                double dx = x - xs[i], dy = y - ys[i];
+                dists[i] = dx * dx + dy * dy;
+            }
+            Arrays.sort(all, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int c = Double.compare(dists[a], dists[b]);
+                    return c != 0 ? c : a - b;
+                }
+            });
+            int[] near = index.nearest(x, y, 7);
+            assertEquals(7, near.length);
+            for (int k = 0; k < near.length; k += 1) {
+                assertEquals((int) all[k], near[k]);
+            }
+            assertEquals((int) all[0], index.nearest(x, y));
+            double x1 = x + random.nextInt(30), y1 = y + random.nextInt(5);
+            ArrayList<Integer> inside = new ArrayList<Integer>();
+            for (int i = 0; i < n; i += 1) {
+                if (x <= xs[i] && xs[i] <= x1 && y <= ys[i] && ys[i] <= y1) {
+                    inside.add(i);
+                }
+            }
+            int[] found = index.within(x, y, x1, y1);
+            assertEquals(inside.size(), found.length);
+            for (int k = 0; k < found.length; k += 1) {
+                assertEquals((int) inside.get(k), found[k]);
+            }
+        }
+        assertEquals(n, index.nearest(0, 0, 2 * n).length);
+        assertEquals(-1, new PlaceIndex(MapLoader.read(mapFile(""), 1))
+                     .nearest(0, 0));
+    }
+
+    @Test
+    public void coordinateRequests() throws IOException {
+        File file = mapFile("L A 0 0\nL B 3 0\nL C 3 4\n"
+                            + "R A US1 3 WE B\nR B I5 4 SN C\n");
+        Router router = Router.read(file, 1);
+        assertEquals(router.leg("A", "C"), router.leg("@0.2:-1", "@2.5:3.9"));
+        assertEquals(-1, router.find("@1"));
+        assertEquals(-1, router.find("@x:1"));
+        try {
+            router.leg("@1:", "A");
+            fail("bad coordinates accepted");
+        } catch (MapException e) {
+            assertEquals("Unknown place @1:.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void tripPlanner() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 20; trial += 1) {
+            int n = 2 + random.nextInt(60);
+            double[] xs = new double[n], ys = new double[n];
+            for (int i = 0; i < n; i += 1) {
+                xs[i] = random.nextInt(100);
+                ys[i] = random.nextInt(100);
+            }
+            boolean returns = trial % 2 == 1 && n > 2;
+            if (returns) {
+                xs[n - 1] = xs[0];
+                ys[n - 1] = ys[0];
+            }
+            double[][] dist = new double[n][n];
+            for (int i = 0; i < n; i += 1) {
+                for (int j = 0; j < n; j += 1) {
+                    dist[i][j] = Math.hypot(xs[i] - xs[j], ys[i] - ys[j]);
+                }
+            }
+            int[] order = TripPlanner.order(dist, returns, Long.MAX_VALUE);
+            int[] sorted = order.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < n; i += 1) {
+                assertEquals(i, sorted[i]);
+            }
+            assertEquals(0, order[0]);
+            if (returns) {
+                assertEquals(n - 1, order[n - 1]);
+            }
+            assertTrue(TripPlanner.length(order, dist)
+                       <= TripPlanner.length(
+                           TripPlanner.nearestNeighbor(dist, returns), dist));
+        }
+    }
+
+    @Test
+    public void plannedTrips() throws IOException {
+        File file = mapFile("L A 0 0\nL B 1 0\nL C 2 0\nL D 3 0\nL E 4 0\n"
+                            + "R A US1 1 WE B\nR B US1 1 WE C\n"
+                            + "R C US1 1 WE D\nR D US1 1 WE E\n");
+        Router router = Router.read(file, 1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            assertArrayEquals(new String[] { "A", "B", "C", "D", "E" },
+                              router.plan(new String[] {
+                                      "A", "E", "B", "D", "C" },
+                                  pool, Long.MAX_VALUE / 2));
+            assertArrayEquals(new String[] { "B", "A", "C", "D", "E" },
+                              router.plan(new String[] {
+                                      "B", "E", "C", "D", "A" },
+                                  pool, Long.MAX_VALUE / 2));
+            String[] round = router.plan(new String[] {
+                    "B", "E", "A", "D", "@1:0.1" }, pool, Long.MAX_VALUE / 2);
+            assertEquals("B", round[0]);
+            assertEquals("@1:0.1", round[4]);
+            try {
+                router.plan(new String[] { "A", "B", "F" }, pool, 0);
+                fail("unknown place accepted");
+            } catch (MapException e) {
+                assertEquals("Unknown place F.", e.getMessage());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void renderedDirections() throws IOException {
+        File file = mapFile("L A 0 0\nL B 1 0\nL C 2 0\nL D 3 0\n"
+                            + "R A US1 1.04 WE B\nR B US1 2.01 WE C\n"
+                            + "R D I5 12345678.9 EW C\n");
+        Router router = Router.read(file, 1);
+        String nl = System.lineSeparator();
+        assertEquals("From A:" + nl + nl
+                     + "1. Take US1 west for 3.1 miles." + nl
+                     + "2. Take I5 east for 1.23456789E7 miles to D" + nl
+                     + nl, router.leg("A", "D"));
+        assertEquals("From B:" + nl + nl + "0.0 miles to B" + nl + nl,
+                     router.leg("B", "B"));
+        RouteRenderer out = new RouteRenderer();
+        router.trip(new String[] { "A", "B", "A" }, out);
+        assertEquals(router.leg("A", "B") + router.leg("B", "A"),
+                     out.toString());
+        StringWriter text = new StringWriter();
+        out.writeTo(text);
+        assertEquals(0, out.length());
+        assertEquals(router.trip(new String[] { "A", "B", "A" }),
+                     text.toString());
+    }
+
+    @Test
+    public void malformedMaps() throws IOException {
+        String[] maps = {
+            "L A 0 0\nL A 1 1\n",
+            "L A 0 0\nR A US1 2 WE B\nL B 1 1\n",
+            "L A 0 0\nL B 1 1\nR A US1 2 NE B\n",
+            "L A 0 x\n",
+            "L A 0 0 0\n",
+            "X A 0 0\n",
+        };
+        for (String map : maps) {
+            try {
+                MapLoader.read(mapFile(map), 1);
+                fail("accepted " + map);
+            } catch (MapException e) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void compiledMap() throws IOException {
+        File text = mapFile("L A 0 0\nL B 3.5 -1\nR A US1 2.25 WE B\n"
+                            + "L C 1 1\nR B I5 1 NS C\nR C US1 4 EW A\n");
+        File compiled = File.createTempFile("map", null);
+        compiled.deleteOnExit();
+        MapLoader loader = MapLoader.read(text, 1);
+        CompiledMap.write(compiled, loader);
+        assertFalse(CompiledMap.isCompiled(text));
+        assertTrue(CompiledMap.isCompiled(compiled));
+        CompiledMap map = CompiledMap.read(compiled);
+        assertEquals(3, map.placeCount());
+        assertEquals(3, map.roadCount());
+        assertEquals(1, map.placeId("B"));
+        assertEquals(-1, map.placeId("D"));
+        assertNull(map.find("D"));
+        assertArrayEquals(new int[] { 0, 2, 4, 6 }, map.adjacencyOffsets());
+        assertArrayEquals(new int[] { 0, 2, 0, 1, 1, 2 },
+                          map.adjacentRoads());
+        assertArrayEquals(loader.adjacentRoads(), map.adjacentRoads());
+        assertEquals(3.5, map.find("B").getLabel().getX(), 0.0);
+        assertEquals("C", map.find("C").getLabel().getName());
+        Iterator<Graph<Place, Road>.Edge> expected =
+            loader.getMap().edges().iterator();
+        for (Graph<Place, Road>.Edge e : map.getMap().edges()) {
+            Graph<Place, Road>.Edge e0 = expected.next();
+            assertEquals(e0.getV0().getLabel().getName(),
+                         e.getV0().getLabel().getName());
+            assertEquals(e0.getV1().getLabel().getName(),
+                         e.getV1().getLabel().getName());
+            assertEquals(e0.getLabel().getName(), e.getLabel().getName());
+            assertEquals(e0.getLabel().getDirections(),
+                         e.getLabel().getDirections());
+            assertEquals(e0.getLabel().getDistance(),
+                         e.getLabel().getDistance(), 0.0);
+        }
+        assertFalse(expected.hasNext());
+    }
+
+    @Test
+    public void server() throws Exception {
+        File file = mapFile("L A 0 0\nL B 3 0\nL C 3 4\n"
+                            + "R A US1 3 WE B\nR B I5 4 SN C\n");
+        final Server server = new Server(file, 0, 2);
+        Thread serving = new Thread() {
+            @Override
+            public void run() {
+                server.serve();
+            }
+        };
+        serving.start();
+        Client client = new Client(server.getPort());
+        Client other = new Client(server.getPort());
+        assertEquals(Router.read(file, 1).trip(Router.places("A, C")),
+                     client.trip("A, C"));
+        assertEquals(client.trip("C, B, A"), other.trip("C, B, A"));
+        try {
+            client.trip("A, D");
+            fail("unknown place accepted");
+        } catch (MapException e) {
+            assertEquals("Unknown place D.", e.getMessage());
+        }
+        FileWriter out = new FileWriter(file, true);
+        out.write("R A US2 4.5 NS C\n");
+        out.close();
+        assertTrue(client.trip("A, C").contains("I5"));
+        other.reload();
+        assertFalse(client.trip("A, C").contains("I5"));
+        assertTrue(client.trip("A, C").contains("US2"));
+        client.shutdown();
+        serving.join(10000);
+        assertFalse(serving.isAlive());
+        assertTrue(server.isShutDown());
+        client.close();
+        other.close();
+    }
+
+    @Test(timeout = 20000)
+    public void idleConnections() throws Exception {
+        File file = mapFile("L A 0 0\nL B 3 0\nR A US1 3 WE B\n");
+        final Server server = new Server(file, 0, 1);
+        Thread serving = new Thread() {
+            @Override
+            public void run() {
+                server.serve();
+            }
+        };
+        serving.start();
+        Client[] clients = new Client[5];
+        for (int i = 0; i < clients.length; i += 1) {
+            clients[i] = new Client(server.getPort());
+            assertTrue(clients[i].trip("A, B").contains("US1"));
+        }
+        for (Client client : clients) {
+            assertTrue(client.trip("B, A").contains("US1"));
+        }
+        server.shutdown();
+        server.awaitTermination();
+        serving.join(10000);
+        assertFalse(serving.isAlive());
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+
 }
@@ -0,0 +1,190 @@
+package trip;
+
+/** Chooses the order in which to visit the stops of a trip so as to make
+ *  it short.
+ *
+ *  The stops are numbered 0 .. N-1, and the distance from stop #i to
+ *  stop #j is DIST[i][j], which is assumed to be the same as DIST[j][i].
+ *  The trip always starts at stop #0; if it is to return to its start,
+ *  stop #N-1 is the same place and the trip also ends there.  The order
+ *  starts as the one found by repeatedly going to the nearest stop not
+ *  yet visited, and is then improved by two kinds of moves until neither
+ *  helps or time runs out: reversing a run of stops (2-opt), and moving
+ *  a run of up to three stops, possibly reversed, elsewhere (Or-opt).
+ *  The result is a local optimum, not necessarily the best order, but is
+ *  usually close to it.  It depends only on DIST, unless time runs out.
+ *  @author Austin Gandy
+ */
+final class TripPlanner {
+
+    /** Returns the order in which to visit the stops whose distances are
+     *  given by DIST, starting at stop #0, and ending at stop #N-1 if
+     *  RETURNS.  The result lists each stop number once, beginning with
+     *  0.  Improvement stops once System.nanoTime() passes DEADLINE. */
+    static int[] order(double[][] dist, boolean returns, long deadline) {
+        int n = dist.length;
+        int[] tour = nearestNeighbor(dist, returns);
+        int last = returns ? n - 2 : n - 1;
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = twoOpt(tour, dist, last, deadline);
+            improved |= orOpt(tour, dist, last, deadline);
+        }
+        return tour;
+    }
+
+    /** Returns the order in which to visit the stops whose distances are
+     *  DIST found by always going next to the nearest stop not yet
+     *  visited, as for order(DIST, RETURNS, DEADLINE). */
+    static int[] nearestNeighbor(double[][] dist, boolean returns) {
+        int n = dist.length;
+        int[] tour = new int[n];
+        if (n == 0) {
+            return tour;
+        }
+        int last = returns ? n - 2 : n - 1;
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for (int k = 1; k <= last; k += 1) {
+            double[] from = dist[tour[k - 1]];
+            int best = -1;
+            for (int j = 1; j <= last; j += 1) {
+                if (!visited[j] && (best < 0 || from[j] < from[best])) {
+                    best = j;
+                }
+            }
+            tour[k] = best;
+            visited[best] = true;
+        }
+        if (returns) {
+            tour[n - 1] = n - 1;
+        }
+        return tour;
+    }
+
+    /** Returns the length of the trip visiting the stops whose distances
+     *  are DIST in the order TOUR. */
+    static double length(int[] tour, double[][] dist) {
+        double result = 0.0;
+        for (int k = 1; k < tour.length; k += 1) {
+            result += dist[tour[k - 1]][tour[k]];
+        }
+        return result;
+    }
+
+    /** Make each reversal of a run of the stops at positions 1 .. LAST of
+     *  TOUR that shortens it, given distances DIST, until DEADLINE.
+     *  Returns true iff TOUR changed. */
+    private static boolean twoOpt(int[] tour, double[][] dist, int last,
+                                  long deadline) {
+        boolean improved = false;
+        for (int i = 1; i < last && System.nanoTime() < deadline; i += 1) {
+            for (int j = i + 1; j <= last; j += 1) {
+                double[] a = dist[tour[i - 1]];
+                int b = tour[i], c = tour[j];
+                double delta = a[c] - a[b];
+                if (j + 1 < tour.length) {
+                    int e = tour[j + 1];
+                    delta += dist[b][e] - dist[c][e];
+                }
+                if (delta < -EPSILON) {
+                    reverse(tour, i, j);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /** Make each move of a run of one to three of the stops at positions
+     *  1 .. LAST of TOUR, possibly reversed, to another place among them
+     *  that shortens TOUR, given distances DIST, until DEADLINE.  Returns
+     *  true iff TOUR changed. */
+    private static boolean orOpt(int[] tour, double[][] dist, int last,
+                                 long deadline) {
+        boolean improved = false;
+        int n = tour.length;
+        for (int len = 1; len <= MAX_RUN; len += 1) {
+            for (int i = 1; i + len - 1 <= last
+                     && System.nanoTime() < deadline; i += 1) {
+                int end = i + len - 1;
+                int head = tour[i], tail = tour[end], prev = tour[i - 1];
+                double gain = dist[prev][head];
+                if (end + 1 < n) {
+                    int next = tour[end + 1];
+                    gain += dist[tail][next] - dist[prev][next];
+                }
+                int bestP = -1;
+                boolean bestReversed = false;
+                double best = gain - EPSILON;
+                for (int p = 0; p <= last; p += 1) {
+                    if (p >= i - 1 && p <= end) {
+                        continue;
+                    }
+                    int x = tour[p];
+                    double forward = dist[x][head],
+                        backward = dist[x][tail];
+                    if (p + 1 < n) {
+                        int y = tour[p + 1];
+                        forward += dist[tail][y] - dist[x][y];
+                        backward += dist[head][y] - dist[x][y];
+                    }
+                    if (forward < best) {
+                        best = forward;
+                        bestP = p;
+                        bestReversed = false;
+                    }
+                    if (backward < best) {
+                        best = backward;
+                        bestP = p;
+                        bestReversed = true;
+                    }
+                }
+                if (bestP >= 0) {
+                    move(tour, i, end, bestP, bestReversed);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /** Reverse the stops at positions I .. J of TOUR. */
+    private static void reverse(int[] tour, int i, int j) {
+        for (; i < j; i += 1, j -= 1) {
+            int t = tour[i];
+            tour[i] = tour[j];
+            tour[j] = t;
+        }
+    }
+
+    /** Move the stops at positions I .. END of TOUR to follow the stop at
+     *  position P, reversing them if REVERSED. */
+    private static void move(int[] tour, int i, int end, int p,
+                             boolean reversed) {
+        int len = end - i + 1;
+        int[] run = new int[len];
+        System.arraycopy(tour, i, run, 0, len);
+        if (reversed) {
+            reverse(run, 0, len - 1);
+        }
+        if (p < i) {
+            System.arraycopy(tour, p + 1, tour, p + 1 + len, i - p - 1);
+            System.arraycopy(run, 0, tour, p + 1, len);
+        } else {
+            System.arraycopy(tour, end + 1, tour, i, p - end);
+            System.arraycopy(run, 0, tour, p - len + 1, len);
+        }
+    }
+
+    /** Smallest improvement in length that counts, so that rounding
+     *  errors cannot cause endless moves. */
+    private static final double EPSILON = 1e-9;
+    /** Longest run of stops moved by Or-opt. */
+    private static final int MAX_RUN = 3;
+
+    /** Not instantiable. */
+    private TripPlanner() {
+    }
+
+}